@@ -0,0 +1,69 @@
+package com.example.scheduler.bench;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 压测用内嵌 H2：表结构与 BatchTask 实体一致（不启动 Spring/Hibernate）
+ */
+final class BenchDb {
+
+    private static final String[] DDL = {
+            "CREATE TABLE batch_task (" +
+                    " id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                    " ticket_no VARCHAR(255) UNIQUE," +
+                    " type VARCHAR(64) NOT NULL," +
+                    " payload CLOB," +
+                    " priority INT," +
+                    " status VARCHAR(16) NOT NULL," +
+                    " attempts INT," +
+                    " max_attempts INT," +
+                    " not_before TIMESTAMP(3)," +
+                    " owner VARCHAR(64)," +
+                    " claim_token VARCHAR(64)," +
+                    " heartbeat_at TIMESTAMP(3)," +
+                    " created_at TIMESTAMP(3) NOT NULL," +
+                    " updated_at TIMESTAMP(3) NOT NULL," +
+                    " finish_at TIMESTAMP(3)," +
+                    " message VARCHAR(2000))",
+            "CREATE INDEX idx_task_status ON batch_task(status)",
+            "CREATE INDEX idx_task_not_before ON batch_task(not_before)",
+            "CREATE INDEX idx_task_pick ON batch_task(status, not_before, priority, id)",
+            "CREATE INDEX idx_task_pick_type ON batch_task(status, type, priority, id)",
+            "CREATE INDEX idx_task_lease ON batch_task(status, heartbeat_at)",
+            "CREATE INDEX idx_task_claim ON batch_task(claim_token)"
+    };
+
+    final HikariDataSource ds;
+    final JdbcTemplate jdbc;
+
+    BenchDb(String name, int poolSize) {
+        HikariConfig cfg = new HikariConfig();
+        cfg.setJdbcUrl("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        cfg.setUsername("sa");
+        cfg.setMaximumPoolSize(poolSize);
+        ds = new HikariDataSource(cfg);
+        jdbc = new JdbcTemplate(ds);
+        for (String sql : DDL) jdbc.execute(sql);
+    }
+
+    void seedPending(String type, int rows) {
+        Timestamp now = new Timestamp(System.currentTimeMillis() - 1000L);
+        List<Object[]> args = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            args.add(new Object[]{type, "{}", i % 10, now, now, now});
+        }
+        jdbc.batchUpdate("INSERT INTO batch_task(type, payload, priority, status, attempts, max_attempts, not_before, created_at, updated_at) " +
+                "VALUES (?, ?, ?, 'PENDING', 0, 3, ?, ?, ?)", args);
+    }
+
+    void close() {
+        jdbc.execute("SHUTDOWN");
+        ds.close();
+    }
+}
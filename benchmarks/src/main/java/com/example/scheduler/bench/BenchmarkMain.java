@@ -0,0 +1,45 @@
+package com.example.scheduler.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Properties;
+
+/**
+ * JMH 入口：参数与 org.openjdk.jmh.Main 相同；未指定 -rf/-rff 时，
+ * 结果以 JSON 写到 results/jmh-&lt;版本&gt;-&lt;时间&gt;.json，便于跨版本对比。
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        ChainedOptionsBuilder opts = new OptionsBuilder().parent(cli);
+        if (!cli.getResultFormat().hasValue()) {
+            opts.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cli.getResult().hasValue()) {
+            Path dir = Paths.get(System.getProperty("bench.results", "results"));
+            Files.createDirectories(dir);
+            String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            opts.result(dir.resolve("jmh-" + version() + "-" + stamp + ".json").toString());
+        }
+        new Runner(opts.build()).run();
+    }
+
+    private static String version() throws Exception {
+        Properties p = new Properties();
+        try (InputStream in = BenchmarkMain.class.getResourceAsStream("/bench.properties")) {
+            if (in != null) p.load(in);
+        }
+        return p.getProperty("scheduler.version", "dev");
+    }
+}
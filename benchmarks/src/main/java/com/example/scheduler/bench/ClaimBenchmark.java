@@ -0,0 +1,95 @@
+package com.example.scheduler.bench;
+
+import com.example.scheduler.metrics.EngineMetrics;
+import com.example.scheduler.repo.ClaimedTask;
+import com.example.scheduler.repo.H2TaskPicker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 领取吞吐：1..8 个并发领取者对同一张表做 claim。
+ * 每次领取后立刻把行放回 PENDING，保持表规模稳定（测的是“领取 + 归还”一个往返）；
+ * emptyPoll 单独测量空轮询的代价。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClaimBenchmark {
+    private static final String TYPE = "bench";
+    private static final AtomicInteger DB_SEQ = new AtomicInteger();
+
+    @Param({"1", "16"})
+    public int batch;
+
+    @Param({"10000"})
+    public int pendingRows;
+
+    private BenchDb db;
+    private H2TaskPicker picker;
+
+    @State(Scope.Thread)
+    public static class Claimer {
+        private static final AtomicInteger SEQ = new AtomicInteger();
+        final String owner = "bench#" + SEQ.incrementAndGet();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        db = new BenchDb("claim" + DB_SEQ.incrementAndGet(), 16);
+        db.seedPending(TYPE, pendingRows);
+        picker = new H2TaskPicker(db.jdbc, new EngineMetrics(new SimpleMeterRegistry()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int claimers1(Claimer c) {
+        return claimAndRequeue(c);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public int claimers2(Claimer c) {
+        return claimAndRequeue(c);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int claimers4(Claimer c) {
+        return claimAndRequeue(c);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int claimers8(Claimer c) {
+        return claimAndRequeue(c);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int emptyPoll(Claimer c) {
+        return picker.claim("bench.none", batch, c.owner).size();
+    }
+
+    private int claimAndRequeue(Claimer c) {
+        List<ClaimedTask> claimed = picker.claim(TYPE, batch, c.owner);
+        if (!claimed.isEmpty()) {
+            List<Object[]> ids = new ArrayList<>(claimed.size());
+            for (ClaimedTask t : claimed) ids.add(new Object[]{t.getId()});
+            db.jdbc.batchUpdate("UPDATE batch_task SET status='PENDING', owner=NULL WHERE id=?", ids);
+        }
+        return claimed.size();
+    }
+}
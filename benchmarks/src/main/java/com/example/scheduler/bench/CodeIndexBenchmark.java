@@ -0,0 +1,102 @@
+package com.example.scheduler.bench;
+
+import com.example.scheduler.config.SchedulerProperties;
+import com.example.scheduler.service.runner.CodeIndexRunner;
+import com.example.scheduler.service.runner.JarSolverCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * CodeIndexRunner 端到端（遍历 → 解析 → 符号解析 → 写 CSV）。
+ * 语料按固定规则生成：每个包若干类，每个类有字段、方法，以及对其他包类的跨文件调用。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class CodeIndexBenchmark {
+
+    @Param({"200"})
+    public int files;
+
+    @Param({"10"})
+    public int packages;
+
+    private Path root;
+    private Path out;
+    private ObjectNode payload;
+    private CodeIndexRunner runner;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("bench-src");
+        out = Files.createTempDirectory("bench-out");
+        generateCorpus(root, files, packages);
+        payload = new ObjectMapper().createObjectNode();
+        payload.put("root", root.toString());
+        payload.put("out", out.toString());
+        SchedulerProperties props = new SchedulerProperties();
+        // 基准只跑单任务索引，不用分片协调
+        runner = new CodeIndexRunner(props, new JarSolverCache(props), null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        deleteTree(root);
+        deleteTree(out);
+    }
+
+    @Benchmark
+    public void index() throws Exception {
+        runner.run(payload);
+    }
+
+    static void generateCorpus(Path root, int files, int packages) throws IOException {
+        for (int i = 0; i < files; i++) {
+            int pkg = i % packages;
+            int peer = (i + 1) % files;
+            String peerPkg = "bench.p" + (peer % packages);
+            StringBuilder src = new StringBuilder()
+                    .append("package bench.p").append(pkg).append(";\n\n")
+                    .append("import java.util.*;\n\n")
+                    .append("/** Synthetic class ").append(i).append(" */\n")
+                    .append("public class C").append(i).append(" {\n")
+                    .append("    private final List<String> names = new ArrayList<>();\n")
+                    .append("    private int counter;\n\n");
+            for (int m = 0; m < 5; m++) {
+                src.append("    /** method ").append(m).append(" */\n")
+                        .append("    public int m").append(m).append("(int x, String s) {\n")
+                        .append("        names.add(s.trim());\n")
+                        .append("        counter += Math.max(x, names.size());\n")
+                        .append("        return new ").append(peerPkg).append(".C").append(peer)
+                        .append("().m").append((m + 1) % 5).append("Leaf(x) + String.valueOf(counter).length();\n")
+                        .append("    }\n\n")
+                        .append("    public int m").append(m).append("Leaf(int x) {\n")
+                        .append("        return Objects.hash(x, counter);\n")
+                        .append("    }\n\n");
+            }
+            src.append("}\n");
+            Path f = root.resolve("bench/p" + pkg + "/C" + i + ".java");
+            Files.createDirectories(f.getParent());
+            Files.write(f, src.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    static void deleteTree(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) return;
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.scheduler.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.scheduling.support.CronExpression;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 补偿窗口内的 cron 展开：与 ScheduleFireService.fireDue 的循环一致（不设 5000 上限），
+ * parseAndExpand 每次重新解析表达式，expandCached 复用已解析的 CronExpression。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CronFireBenchmark {
+
+    @Param({"* * * * * *", "*/5 * * * * *", "0 */1 * * * *"})
+    public String cron;
+
+    @Param({"3600", "86400"})
+    public long windowSeconds;
+
+    private CronExpression parsed;
+    private ZonedDateTime end;
+    private ZonedDateTime start;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        parsed = CronExpression.parse(cron);
+        end = ZonedDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneId.of("Asia/Tokyo"));
+        start = end.minusSeconds(windowSeconds);
+    }
+
+    @Benchmark
+    public int parseAndExpand() {
+        return expand(CronExpression.parse(cron));
+    }
+
+    @Benchmark
+    public int expandCached() {
+        return expand(parsed);
+    }
+
+    private int expand(CronExpression c) {
+        int n = 0;
+        ZonedDateTime next = c.next(start.minusSeconds(1));
+        while (next != null && !next.isAfter(end)) {
+            n++;
+            next = c.next(next);
+        }
+        return n;
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.scheduler.config;
+
+import com.example.scheduler.domain.MisfirePolicy;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 调度器可调参数（application.yml 中的 scheduler.*）
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "scheduler")
+public class SchedulerProperties {
+
+    private final Engine engine = new Engine();
+    private final Poll poll = new Poll();
+    private final Lease lease = new Lease();
+    private final RetryPolicies retry = new RetryPolicies();
+    private final Completion completion = new Completion();
+    private final Picker picker = new Picker();
+    private final Retention retention = new Retention();
+    private final Dashboard dashboard = new Dashboard();
+    private final Cron cron = new Cron();
+    private final Cluster cluster = new Cluster();
+    private final CodeIndex codeIndex = new CodeIndex();
+
+    @Getter
+    @Setter
+    public static class Engine {
+        /**
+         * 每个类型单次领取的最大行数
+         */
+        private int claimBatchSize = 16;
+
+        /**
+         * 停机时等待在途任务结束的秒数
+         */
+        private int shutdownWaitSeconds = 30;
+
+        /**
+         * 未单独配置的 Runner 类型使用的隔离舱参数
+         */
+        private Bulkhead defaults = new Bulkhead();
+
+        /**
+         * 按类型覆盖，key 为 TaskRunner.type()（含点号时 yml 中写作 "[code.index]"）
+         */
+        private Map<String, Bulkhead> bulkheads = new HashMap<>();
+
+        public Bulkhead bulkheadFor(String type) {
+            return bulkheads.getOrDefault(type, defaults);
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Poll {
+        /**
+         * 启动后首次轮询前的等待
+         */
+        private Duration initialDelay = Duration.ofSeconds(3);
+
+        /**
+         * 队列为空时的首个退避间隔
+         */
+        private Duration minBackoff = Duration.ofMillis(100);
+
+        /**
+         * 退避上限（也是额度已满时等待通知的最长时间）
+         */
+        private Duration maxBackoff = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Lease {
+        /**
+         * 心跳续期间隔
+         */
+        private Duration heartbeatInterval = Duration.ofSeconds(10);
+
+        /**
+         * heartbeat_at 超过该时长未更新即视为节点失联
+         */
+        private Duration timeout = Duration.ofSeconds(60);
+
+        /**
+         * 回收扫描间隔
+         */
+        private Duration reapInterval = Duration.ofSeconds(30);
+    }
+
+    @Getter
+    @Setter
+    public static class RetryPolicies {
+        private Retry defaults = new Retry();
+
+        /**
+         * 按类型覆盖，key 为任务 type
+         */
+        private Map<String, Retry> types = new HashMap<>();
+
+        public Retry policyFor(String type) {
+            return types.getOrDefault(type, defaults);
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Retry {
+        /**
+         * 行上未指定 max_attempts 时的最大执行次数
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * 第一次重试前的等待，之后每次翻倍
+         */
+        private Duration baseDelay = Duration.ofSeconds(5);
+
+        /**
+         * 单次等待上限（不含抖动）
+         */
+        private Duration maxDelay = Duration.ofMinutes(10);
+
+        /**
+         * 抖动比例：在退避基础上再随机加 [0, delay * jitter)
+         */
+        private double jitter = 0.5;
+    }
+
+    @Getter
+    @Setter
+    public static class Picker {
+        /**
+         * db：按 profile 使用数据库 picker；memory：内存队列 + 异步回写（仅单节点）
+         */
+        private String mode = "db";
+
+        /**
+         * memory 模式下增量装载与 write-behind 的间隔
+         */
+        private Duration syncInterval = Duration.ofMillis(100);
+
+        /**
+         * memory 模式下全量重扫 PENDING 行的间隔：补上 updated_at 早于增量水位、提交却更晚的行（长事务里入队、重试）
+         */
+        private Duration resyncInterval = Duration.ofSeconds(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Completion {
+        /**
+         * 攒批的最长等待
+         */
+        private Duration flushInterval = Duration.ofMillis(100);
+
+        /**
+         * 单批最多条数
+         */
+        private int maxBatch = 200;
+
+        /**
+         * 待回写结果的队列上限，满了 worker 会阻塞
+         */
+        private int queueCapacity = 10_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Cluster {
+        /**
+         * ALL：每个节点都触发全部规则（依赖 ticket 去重）；LEADER：只有持有 batch_lease 的节点触发；
+         * SHARDED：按存活节点对规则 id 做一致性划分，各节点只触发自己的那一份
+         */
+        private ClusterMode mode = ClusterMode.LEADER;
+
+        /**
+         * 租约 / 节点心跳的有效期，节点失联后最多这么久由其他节点接管
+         */
+        private Duration leaseDuration = Duration.ofSeconds(15);
+
+        /**
+         * 续期间隔，需明显小于 leaseDuration
+         */
+        private Duration renewInterval = Duration.ofSeconds(5);
+    }
+
+    public enum ClusterMode {
+        ALL, LEADER, SHARDED
+    }
+
+    @Getter
+    @Setter
+    public static class Cron {
+        /**
+         * 检查堆顶是否到期的间隔，即触发精度
+         */
+        private Duration tick = Duration.ofMillis(500);
+
+        /**
+         * 按 updated_at 增量读取变更规则的间隔
+         */
+        private Duration refreshInterval = Duration.ofSeconds(10);
+
+        /**
+         * 全量重读 batch_schedule 的间隔，兜底直接删行、未维护 updated_at 的外部修改
+         */
+        private Duration resyncInterval = Duration.ofMinutes(10);
+
+        /**
+         * 从未触发过的规则回补多久之内的触发时间
+         */
+        private Duration backfillWindow = Duration.ofHours(1);
+
+        /**
+         * 早于 now - misfireThreshold 的触发时间视为错过，按 misfire 策略处理
+         */
+        private Duration misfireThreshold = Duration.ofSeconds(60);
+
+        private MisfirePolicy defaultMisfirePolicy = MisfirePolicy.FIRE_ALL;
+
+        /**
+         * 一个 tick 内所有规则合计最多补多少个错过的触发，超出的留到后续 tick
+         */
+        private int maxBackfillPerTick = 1000;
+    }
+
+    @Getter
+    @Setter
+    public static class CodeIndex {
+        /**
+         * 进程内缓存的 classpath jar 符号表总大小上限（按 jar 文件大小计），超出时淘汰空闲的最久未用 jar
+         */
+        private DataSize jarCacheBudget = DataSize.ofMegabytes(256);
+
+        /**
+         * 单次运行中已读入、尚未写出的源码总大小上限（payload 的 heapBudgetMb 可覆盖），超出时读取暂停
+         */
+        private DataSize heapBudget = DataSize.ofMegabytes(64);
+
+        /**
+         * 不小于该大小的源文件用内存映射读取
+         */
+        private DataSize mmapThreshold = DataSize.ofMegabytes(1);
+
+        /**
+         * 分片模式下合并任务检查分片子任务是否全部完成的间隔，未完成时推迟这么久再查
+         */
+        private Duration mergePollInterval = Duration.ofSeconds(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Dashboard {
+        /**
+         * 任务列表每页条数
+         */
+        private int pageSize = 50;
+
+        /**
+         * 聚合统计缓存时间
+         */
+        private Duration statsTtl = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Retention {
+        private boolean enabled = false;
+
+        /**
+         * ARCHIVE：搬到 *_archive 表（需先执行 db/&lt;dialect&gt;/retention.sql）；PURGE：直接删除
+         */
+        private RetentionMode mode = RetentionMode.ARCHIVE;
+
+        /**
+         * finish_at 早于 now - maxAge 的终态任务才处理
+         */
+        private Duration maxAge = Duration.ofDays(30);
+
+        /**
+         * 每个短事务处理的任务数
+         */
+        private int chunkSize = 500;
+
+        /**
+         * 单轮最多处理的块数，避免一次清理占用太久
+         */
+        private int maxChunksPerRun = 200;
+
+        private Duration interval = Duration.ofMinutes(10);
+    }
+
+    public enum RetentionMode {
+        ARCHIVE, PURGE
+    }
+
+    @Getter
+    @Setter
+    public static class Bulkhead {
+        /**
+         * 同时执行的任务上限
+         */
+        private int maxConcurrency = 4;
+
+        /**
+         * 已领取、等待执行的任务上限（预取，避免 worker 在两次轮询之间空转）
+         */
+        private int queueCapacity = 0;
+
+        private ThreadMode threadMode = ThreadMode.PLATFORM;
+    }
+
+    public enum ThreadMode {
+        PLATFORM, VIRTUAL
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.scheduler.domain;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.sql.Timestamp;
+
+/**
+ * 集群租约：name 对应一项全局唯一的职责（如 cron 触发），owner 在 expires_at 之前持有
+ */
+@Entity
+@Table(name = "batch_lease")
+@Getter @Setter @ToString
+public class BatchLease {
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+
+    @Column(name = "owner", length = 64)
+    private String owner;
+
+    @Column(name = "expires_at", nullable = false, columnDefinition = "TIMESTAMP(3)")
+    private Timestamp expiresAt;
+
+    @Column(name = "updated_at", nullable = false, columnDefinition = "TIMESTAMP(3)")
+    private Timestamp updatedAt;
+}
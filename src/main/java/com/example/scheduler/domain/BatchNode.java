@@ -0,0 +1,24 @@
+package com.example.scheduler.domain;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.sql.Timestamp;
+
+/**
+ * 集群成员：各节点定期刷新 heartbeat_at，分片模式按存活节点划分调度规则
+ */
+@Entity
+@Table(name = "batch_node", indexes = {@Index(name = "idx_node_heartbeat", columnList = "heartbeat_at")})
+@Getter @Setter @ToString
+public class BatchNode {
+    @Id
+    @Column(name = "node_id", length = 64)
+    private String nodeId;
+
+    @Column(name = "started_at", nullable = false, columnDefinition = "TIMESTAMP(3)")
+    private Timestamp startedAt;
+
+    @Column(name = "heartbeat_at", nullable = false, columnDefinition = "TIMESTAMP(3)")
+    private Timestamp heartbeatAt;
+}
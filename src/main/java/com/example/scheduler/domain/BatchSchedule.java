@@ -6,7 +6,9 @@ import javax.persistence.*;
 import java.sql.Timestamp;
 
 @Entity
-@Table(name = "batch_schedule", indexes = {@Index(name = "idx_sched_enabled", columnList = "enabled")})
+@Table(name = "batch_schedule", indexes = {
+        @Index(name = "idx_sched_enabled", columnList = "enabled"),
+        @Index(name = "idx_sched_updated", columnList = "updated_at")})
 @Getter @Setter @ToString
 public class BatchSchedule {
     @Id
@@ -27,4 +29,29 @@ public class BatchSchedule {
     private Integer enabled = 1;
 
     private Timestamp lastFireAt;
-}
\ No newline at end of file
+
+    /**
+     * 为空时使用 scheduler.cron.default-misfire-policy
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "misfire_policy", length = 16)
+    private MisfirePolicy misfirePolicy;
+
+    /**
+     * FIRE_LAST_N 的 N
+     */
+    @Column(name = "misfire_last_n")
+    private Integer misfireLastN;
+
+    /**
+     * 定义变更时间（last_fire_at 的推进不算），ScheduleFireService 按它增量刷新
+     */
+    @Column(name = "updated_at", columnDefinition = "TIMESTAMP(3)")
+    private Timestamp updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    public void touch() {
+        updatedAt = new Timestamp(System.currentTimeMillis());
+    }
+}
@@ -7,7 +7,7 @@ import java.sql.Timestamp;
 
 @Entity
 @Getter @Setter @ToString
-@Table(name = "batch_task", indexes = {@Index(name = "idx_task_status", columnList = "status"), @Index(name = "idx_task_not_before", columnList = "not_before"), @Index(name = "idx_task_pick", columnList = "status, not_before, priority, id")})
+@Table(name = "batch_task", indexes = {@Index(name = "idx_task_status", columnList = "status"), @Index(name = "idx_task_not_before", columnList = "not_before"), @Index(name = "idx_task_pick", columnList = "status, not_before, priority, id"), @Index(name = "idx_task_pick_type", columnList = "status, type, priority, id"), @Index(name = "idx_task_lease", columnList = "status, heartbeat_at"), @Index(name = "idx_task_claim", columnList = "claim_token"), @Index(name = "idx_task_finish", columnList = "status, finish_at")})
 public class BatchTask {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -41,6 +41,12 @@ public class BatchTask {
     @Column(name = "owner", length = 64)
     private String owner;
 
+    /**
+     * 本次领取的批次标记（MySQL 领取后按它取回）
+     */
+    @Column(name = "claim_token", length = 64)
+    private String claimToken;
+
     @Column(name = "heartbeat_at", columnDefinition = "TIMESTAMP(3)")
     private Timestamp heartbeatAt;
 
@@ -61,6 +67,10 @@ public class BatchTask {
         Timestamp now = new Timestamp(System.currentTimeMillis());
         createdAt = now;
         updatedAt = now;
+        // 手动入队时未指定的列给默认值，否则 not_before 为 NULL 永远不会被领取
+        if (notBefore == null) notBefore = now;
+        if (priority == null) priority = 0;
+        if (attempts == null) attempts = 0;
     }
 
     @PreUpdate
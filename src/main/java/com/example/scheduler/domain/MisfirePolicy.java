@@ -0,0 +1,9 @@
+package com.example.scheduler.domain;
+
+/**
+ * 错过的触发（早于 now - misfire-threshold）如何补：
+ * FIRE_ALL 全部补；FIRE_ONCE 合并成一次；SKIP 直接跳到现在；FIRE_LAST_N 只补最近 N 次
+ */
+public enum MisfirePolicy {
+    FIRE_ALL, FIRE_ONCE, SKIP, FIRE_LAST_N
+}
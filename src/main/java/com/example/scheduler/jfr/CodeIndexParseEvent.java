@@ -0,0 +1,27 @@
+package com.example.scheduler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * code.index：读取并解析单个文件
+ */
+@Name("com.example.scheduler.CodeIndexParse")
+@Label("Code Index Parse")
+@Category({"Scheduler", "Code Index"})
+@StackTrace(false)
+@Description("Read and parse of one source file")
+public class CodeIndexParseEvent extends Event {
+    @Label("File")
+    public String file;
+
+    @Label("Chars")
+    public long chars;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
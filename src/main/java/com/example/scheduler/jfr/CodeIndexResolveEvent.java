@@ -0,0 +1,33 @@
+package com.example.scheduler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * code.index：解析单个 MethodCallExpr 的调用目标。
+ * 调用数量很大，默认只记录超过 1 ms 的解析，录制配置里可把 threshold 调成 0。
+ */
+@Name("com.example.scheduler.CodeIndexResolve")
+@Label("Code Index Resolve")
+@Category({"Scheduler", "Code Index"})
+@StackTrace(false)
+@Description("Symbol resolution of one method call")
+@Threshold("1 ms")
+public class CodeIndexResolveEvent extends Event {
+    @Label("File")
+    public String file;
+
+    @Label("Line")
+    public int line;
+
+    @Label("Call")
+    public String call;
+
+    @Label("Resolved")
+    public boolean resolved;
+}
@@ -0,0 +1,27 @@
+package com.example.scheduler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * code.index：遍历源码树并过滤出 .java 文件。遍历与解析交错进行，耗时包含等待解析结果写出的时间
+ */
+@Name("com.example.scheduler.CodeIndexWalk")
+@Label("Code Index Walk")
+@Category({"Scheduler", "Code Index"})
+@StackTrace(false)
+@Description("Source tree walk and path filtering, streamed into parsing")
+public class CodeIndexWalkEvent extends Event {
+    @Label("Root")
+    public String root;
+
+    @Label("Files")
+    public int files;
+
+    @Label("Pruned Directories")
+    public int prunedDirs;
+}
@@ -0,0 +1,24 @@
+package com.example.scheduler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * code.index：把单个文件产生的行写入 CSV
+ */
+@Name("com.example.scheduler.CodeIndexWrite")
+@Label("Code Index Write")
+@Category({"Scheduler", "Code Index"})
+@StackTrace(false)
+@Description("CSV write of the rows produced by one source file")
+public class CodeIndexWriteEvent extends Event {
+    @Label("File")
+    public String file;
+
+    @Label("Rows")
+    public int rows;
+}
@@ -0,0 +1,24 @@
+package com.example.scheduler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 一批结果回写 batch_task / batch_run 的事务
+ */
+@Name("com.example.scheduler.CompletionFlush")
+@Label("Completion Flush")
+@Category({"Scheduler", "Engine"})
+@StackTrace(false)
+@Description("One JDBC batch transaction writing task results back")
+public class CompletionFlushEvent extends Event {
+    @Label("Batch Size")
+    public int batchSize;
+
+    @Label("Lost")
+    public int lost;
+}
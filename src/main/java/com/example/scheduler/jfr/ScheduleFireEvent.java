@@ -0,0 +1,44 @@
+package com.example.scheduler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timestamp;
+
+/**
+ * 一个到期调度规则的触发决策（规则装载时 cron 非法也会记录）
+ */
+@Name("com.example.scheduler.ScheduleFire")
+@Label("Schedule Fire")
+@Category({"Scheduler", "Cron"})
+@StackTrace(false)
+@Description("Fire decision for one due schedule")
+public class ScheduleFireEvent extends Event {
+    @Label("Schedule Id")
+    public long scheduleId;
+
+    @Label("Type")
+    public String type;
+
+    @Label("Cron")
+    public String cron;
+
+    /**
+     * FIRED / DUPLICATE / SKIPPED / DEFERRED / INVALID_CRON
+     */
+    @Label("Decision")
+    public String decision;
+
+    @Label("Due")
+    public int due;
+
+    @Label("Inserted")
+    public int inserted;
+
+    @Label("First Fire Time")
+    @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+    public long firstFireTime;
+}
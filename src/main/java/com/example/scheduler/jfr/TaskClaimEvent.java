@@ -0,0 +1,30 @@
+package com.example.scheduler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 一次按类型领取（包含空轮询），持续时间即 picker 的数据库往返与锁等待
+ */
+@Name("com.example.scheduler.TaskClaim")
+@Label("Task Claim")
+@Category({"Scheduler", "Engine"})
+@StackTrace(false)
+@Description("One picker claim round trip for a task type")
+public class TaskClaimEvent extends Event {
+    @Label("Type")
+    public String type;
+
+    @Label("Limit")
+    public int limit;
+
+    @Label("Claimed")
+    public int claimed;
+
+    @Label("Owner")
+    public String owner;
+}
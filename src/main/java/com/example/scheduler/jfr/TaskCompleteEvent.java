@@ -0,0 +1,27 @@
+package com.example.scheduler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * worker 把结果交给 CompletionBuffer；持续时间长说明回写队列已满（背压）
+ */
+@Name("com.example.scheduler.TaskComplete")
+@Label("Task Complete")
+@Category({"Scheduler", "Engine"})
+@StackTrace(false)
+@Description("Hand-off of a task result to the completion buffer, including back-pressure wait")
+public class TaskCompleteEvent extends Event {
+    @Label("Task Id")
+    public long taskId;
+
+    @Label("Type")
+    public String type;
+
+    @Label("Status")
+    public String status;
+}
@@ -0,0 +1,33 @@
+package com.example.scheduler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Runner 执行一个任务（不含结果回写）
+ */
+@Name("com.example.scheduler.TaskRun")
+@Label("Task Run")
+@Category({"Scheduler", "Engine"})
+@StackTrace(false)
+@Description("Runner execution of one task")
+public class TaskRunEvent extends Event {
+    @Label("Task Id")
+    public long taskId;
+
+    @Label("Type")
+    public String type;
+
+    @Label("Attempt")
+    public int attempt;
+
+    /**
+     * SUCCEED / RETRY / DEFERRED / FAILED
+     */
+    @Label("Outcome")
+    public String outcome;
+}
@@ -0,0 +1,29 @@
+package com.example.scheduler.metrics;
+
+/**
+ * picker 领取过程的阶段，对应 scheduler.claim.phase 的 phase 标签
+ */
+public enum ClaimPhase {
+    /**
+     * 打标记：MySQL UPDATE / H2 MERGE；DB2 的 FINAL TABLE 一条语句同时完成取回
+     */
+    MARK,
+    /**
+     * 按 claim_token 取回
+     */
+    FETCH,
+    /**
+     * 内存 picker 出队
+     */
+    DEQUEUE,
+    /**
+     * 内存 picker 批量回写 RUNNING 标记
+     */
+    WRITE_BEHIND,
+    /**
+     * 内存 picker 增量装载 PENDING
+     */
+    REFILL;
+
+    final String tag = name().toLowerCase();
+}
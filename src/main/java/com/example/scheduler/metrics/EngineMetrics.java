@@ -0,0 +1,134 @@
+package com.example.scheduler.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 引擎/调度指标（Micrometer，经 /actuator/prometheus 暴露）。
+ * 所有 Meter 在注册 Runner 或启动时建好，热路径上只做 map 查找和 record(nanos)，不创建 Meter / Tag / Sample。
+ */
+@Component
+public class EngineMetrics {
+    private final MeterRegistry registry;
+    private final Map<String, TypeMeters> types = new ConcurrentHashMap<>();
+    private final Timer[] phases = new Timer[ClaimPhase.values().length];
+
+    private final Timer completionFlush;
+    private final DistributionSummary completionBatch;
+    private final Timer cronFireLag;
+    private final DistributionSummary cronBackfill;
+
+    public EngineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (ClaimPhase p : ClaimPhase.values()) {
+            phases[p.ordinal()] = Timer.builder("scheduler.claim.phase")
+                    .description("Picker claim latency by phase")
+                    .tag("phase", p.tag)
+                    .register(registry);
+        }
+        this.completionFlush = Timer.builder("scheduler.completion.flush")
+                .description("Latency of one completion write-back batch")
+                .register(registry);
+        this.completionBatch = DistributionSummary.builder("scheduler.completion.batch.size")
+                .description("Completions written per batch")
+                .register(registry);
+        this.cronFireLag = Timer.builder("scheduler.cron.fire.lag")
+                .description("Delay between the latest due fire time of a schedule and the insert of its tickets")
+                .register(registry);
+        this.cronBackfill = DistributionSummary.builder("scheduler.cron.backfill")
+                .description("Fire times inserted for one schedule in one tick")
+                .register(registry);
+    }
+
+    /**
+     * Runner 注册时调用，预先建好该类型的全部 Meter
+     */
+    public TypeMeters forType(String type) {
+        return types.computeIfAbsent(type, t -> new TypeMeters(registry, t));
+    }
+
+    public void claimPhase(ClaimPhase phase, long nanos) {
+        phases[phase.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void completionFlushed(int size, long nanos) {
+        completionFlush.record(nanos, TimeUnit.NANOSECONDS);
+        completionBatch.record(size);
+    }
+
+    public void cronFired(long lagMillis) {
+        cronFireLag.record(Math.max(0L, lagMillis), TimeUnit.MILLISECONDS);
+    }
+
+    public void cronBackfill(int fires) {
+        cronBackfill.record(fires);
+    }
+
+    /**
+     * 注册一个随取随算的 Gauge（对象由调用方持有强引用）
+     */
+    public <T> void gauge(String name, String description, T obj, ToDoubleFunction<T> fn, String... tags) {
+        Gauge.builder(name, obj, fn).description(description).tags(tags).strongReference(true).register(registry);
+    }
+
+    /**
+     * 单个 Runner 类型的 Meter
+     */
+    public static final class TypeMeters {
+        private final Timer claimHit;
+        private final Timer claimEmpty;
+        private final Counter claimed;
+        private final Timer runSucceed;
+        private final Timer runRetry;
+        private final Timer runFailed;
+
+        TypeMeters(MeterRegistry registry, String type) {
+            this.claimHit = claimTimer(registry, type, "claimed");
+            this.claimEmpty = claimTimer(registry, type, "empty");
+            this.claimed = Counter.builder("scheduler.claim.tasks")
+                    .description("Tasks claimed")
+                    .tag("type", type)
+                    .register(registry);
+            this.runSucceed = runTimer(registry, type, "succeed");
+            this.runRetry = runTimer(registry, type, "retry");
+            this.runFailed = runTimer(registry, type, "failed");
+        }
+
+        private static Timer claimTimer(MeterRegistry registry, String type, String result) {
+            return Timer.builder("scheduler.claim")
+                    .description("Claim round trip per type, empty polls included")
+                    .tags("type", type, "result", result)
+                    .register(registry);
+        }
+
+        private static Timer runTimer(MeterRegistry registry, String type, String outcome) {
+            return Timer.builder("scheduler.task.run")
+                    .description("Runner execution time")
+                    .tags("type", type, "outcome", outcome)
+                    .register(registry);
+        }
+
+        public void claim(int count, long nanos) {
+            if (count == 0) {
+                claimEmpty.record(nanos, TimeUnit.NANOSECONDS);
+            } else {
+                claimHit.record(nanos, TimeUnit.NANOSECONDS);
+                claimed.increment(count);
+            }
+        }
+
+        public void run(boolean succeed, boolean retry, long nanos) {
+            Timer t = succeed ? runSucceed : (retry ? runRetry : runFailed);
+            t.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.scheduler.repo;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * 领取结果的轻量投影：只带执行所需的列，不经过 JPA 持久化上下文
+ */
+@Getter
+@ToString(exclude = "payload")
+@AllArgsConstructor
+public class ClaimedTask {
+    public static final RowMapper<ClaimedTask> ROW_MAPPER = (rs, i) -> new ClaimedTask(
+            rs.getLong("id"),
+            rs.getString("type"),
+            rs.getString("payload"),
+            rs.getObject("attempts", Integer.class),
+            rs.getObject("max_attempts", Integer.class));
+
+    private final Long id;
+    private final String type;
+    private final String payload;
+    private final Integer attempts;
+    private final Integer maxAttempts;
+}
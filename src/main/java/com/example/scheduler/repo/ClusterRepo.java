@@ -0,0 +1,88 @@
+package com.example.scheduler.repo;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * batch_lease / batch_node 的读写。每条语句自动提交，抢占冲突靠主键与条件 UPDATE 判定，不持有事务。
+ * 所有时间都取数据库的当前时间（加减时长在 SQL 里完成），租约过期与节点存活不受各节点时钟偏差影响；
+ * 当前时间与时长运算的写法因方言而异，由子类给出。
+ */
+public abstract class ClusterRepo {
+
+    protected final JdbcTemplate jdbc;
+
+    protected ClusterRepo(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * 数据库当前时间（精确到毫秒）
+     */
+    protected abstract String now();
+
+    /**
+     * 数据库当前时间加上一个以微秒计的偏移（绑定为唯一的 ? 参数，可为负）
+     */
+    protected abstract String nowPlusMicros();
+
+    /**
+     * 续期自己的租约，或接管已过期的租约；租约行不存在时尝试插入
+     *
+     * @return 调用后本节点是否持有租约
+     */
+    public boolean tryAcquire(String name, String owner, Duration lease) {
+        long micros = lease.toNanos() / 1000L;
+        int n = jdbc.update("UPDATE batch_lease SET owner=?, expires_at=" + nowPlusMicros() + ", updated_at=" + now() + " " +
+                "WHERE name=? AND (owner=? OR expires_at < " + now() + ")", owner, micros, name, owner);
+        if (n > 0) return true;
+        try {
+            return jdbc.update("INSERT INTO batch_lease(name, owner, expires_at, updated_at) " +
+                    "VALUES (?, ?, " + nowPlusMicros() + ", " + now() + ")", name, owner, micros) > 0;
+        } catch (DuplicateKeyException e) {
+            // 行已存在且由他人持有
+            return false;
+        }
+    }
+
+    /**
+     * 停机时主动释放，其他节点下一次续期即可接管
+     */
+    public void release(String name, String owner) {
+        jdbc.update("UPDATE batch_lease SET expires_at=" + now() + ", updated_at=" + now() + " WHERE name=? AND owner=?", name, owner);
+    }
+
+    public void heartbeatNode(String nodeId) {
+        int n = jdbc.update("UPDATE batch_node SET heartbeat_at=" + now() + " WHERE node_id=?", nodeId);
+        if (n == 0) {
+            try {
+                jdbc.update("INSERT INTO batch_node(node_id, started_at, heartbeat_at) VALUES (?, " + now() + ", " + now() + ")",
+                        nodeId);
+            } catch (DuplicateKeyException ignore) {
+                // 并发插入，已存在即可
+            }
+        }
+    }
+
+    /**
+     * 最近 within 内有心跳的节点，按 node_id 排序
+     */
+    public List<String> liveNodes(Duration within) {
+        return jdbc.queryForList("SELECT node_id FROM batch_node WHERE heartbeat_at >= " + nowPlusMicros() + " ORDER BY node_id",
+                String.class, -within.toNanos() / 1000L);
+    }
+
+    public void removeNode(String nodeId) {
+        jdbc.update("DELETE FROM batch_node WHERE node_id=?", nodeId);
+    }
+
+    /**
+     * 删除超过 idle 没有心跳的节点
+     */
+    public int removeNodesIdleFor(Duration idle) {
+        return jdbc.update("DELETE FROM batch_node WHERE heartbeat_at < " + nowPlusMicros(), -idle.toNanos() / 1000L);
+    }
+}
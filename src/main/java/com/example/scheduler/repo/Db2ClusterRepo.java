@@ -0,0 +1,27 @@
+package com.example.scheduler.repo;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * DB2：CURRENT TIMESTAMP 加上带标签的时长（MICROSECONDS）
+ */
+@Repository
+@Profile("db2")
+public class Db2ClusterRepo extends ClusterRepo {
+
+    public Db2ClusterRepo(JdbcTemplate jdbc) {
+        super(jdbc);
+    }
+
+    @Override
+    protected String now() {
+        return "CURRENT TIMESTAMP";
+    }
+
+    @Override
+    protected String nowPlusMicros() {
+        return "(" + now() + " + CAST(? AS BIGINT) MICROSECONDS)";
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.scheduler.repo;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * DB2：CURRENT TIMESTAMP 减去带标签的时长（SECONDS）
+ */
+@Repository
+@Profile("db2")
+@RequiredArgsConstructor
+public class Db2LeaseScanner implements LeaseScanner {
+
+    private final JdbcTemplate jdbc;
+
+    @Override
+    public List<ClaimedTask> lockExpired(Duration timeout, int limit) {
+        String sql =
+                "SELECT id, type, attempts, max_attempts FROM batch_task " +
+                        "WHERE status='RUNNING' AND heartbeat_at < CURRENT TIMESTAMP - CAST(? AS INTEGER) SECONDS " +
+                        "ORDER BY id " +
+                        "FETCH FIRST " + Math.max(1, limit) + " ROWS ONLY " +
+                        "FOR UPDATE WITH RS SKIP LOCKED DATA";
+        return jdbc.query(sql, EXPIRED, timeout.getSeconds());
+    }
+}
@@ -1,48 +1,44 @@
 package com.example.scheduler.repo;
 
+import com.example.scheduler.metrics.ClaimPhase;
+import com.example.scheduler.metrics.EngineMetrics;
+import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Transactional;
 
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
 import java.util.List;
-import java.util.Optional;
 
+/**
+ * DB2：SELECT ... FROM FINAL TABLE (UPDATE ...) 一条语句完成锁定、标记与取回
+ */
 @Repository
 @Profile("db2")
+@RequiredArgsConstructor
 public class Db2TaskPicker implements TaskPicker {
 
-    @PersistenceContext
-    private EntityManager em;
+    private final JdbcTemplate jdbc;
+    private final EngineMetrics metrics;
 
     @Override
-    @Transactional
-    @SuppressWarnings("unchecked")
-    public Optional<Long> lockOnePendingId() {
-        // DB2: FETCH FIRST 1 ROWS ONLY + FOR UPDATE WITH RS SKIP LOCKED DATA
+    public List<ClaimedTask> claim(String type, int limit, String owner) {
         String sql =
-                "SELECT id " +
-                        "FROM batch_task " +
-                        "WHERE status='PENDING' AND not_before <= CURRENT TIMESTAMP " +
-                        "ORDER BY priority DESC, id ASC " +
-                        "FETCH FIRST 1 ROWS ONLY " +
-                        "FOR UPDATE WITH RS SKIP LOCKED DATA";
-        List<Number> ids = em.createNativeQuery(sql).getResultList();
-        return ids.isEmpty() ? Optional.empty() : Optional.of(ids.get(0).longValue());
+                "SELECT id, type, payload, attempts, max_attempts " +
+                        "FROM FINAL TABLE (" +
+                        "  UPDATE (" +
+                        "    SELECT id, type, payload, attempts, max_attempts, priority, status, owner, heartbeat_at, updated_at " +
+                        "    FROM batch_task " +
+                        "    WHERE status='PENDING' AND type=? AND not_before <= CURRENT TIMESTAMP " +
+                        "    ORDER BY priority DESC, id ASC " +
+                        "    FETCH FIRST " + Math.max(1, limit) + " ROWS ONLY" +
+                        "  ) " +
+                        "  SET status='RUNNING', owner=?, heartbeat_at=CURRENT TIMESTAMP, updated_at=CURRENT TIMESTAMP " +
+                        "  WITH RS SKIP LOCKED DATA" +
+                        ") " +
+                        "ORDER BY priority DESC, id ASC";
+        long t0 = System.nanoTime();
+        List<ClaimedTask> tasks = jdbc.query(sql, ClaimedTask.ROW_MAPPER, type, owner);
+        metrics.claimPhase(ClaimPhase.MARK, System.nanoTime() - t0);
+        return tasks;
     }
-
-    @Override
-    @Transactional
-    public int markRunning(Long id, String owner) {
-        String sql =
-                "UPDATE batch_task " +
-                        "SET status='RUNNING', owner=:owner, " +
-                        "    heartbeat_at=CURRENT TIMESTAMP, updated_at=CURRENT TIMESTAMP " +
-                        "WHERE id=:id";
-        return em.createNativeQuery(sql)
-                .setParameter("owner", owner)
-                .setParameter("id", id)
-                .executeUpdate();
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+package com.example.scheduler.repo;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DB2：MERGE ... USING (VALUES ...) ON ticket_no WHEN NOT MATCHED THEN INSERT。
+ * 内嵌 H2 支持同样的语法，共用这一实现。
+ * VALUES 里只放每行不同的 ticket_no / not_before，type、payload 作为常量只绑定一次。
+ */
+@Repository
+@Profile({"db2", "h2"})
+@RequiredArgsConstructor
+public class Db2TicketWriter implements TicketWriter {
+
+    private final JdbcTemplate jdbc;
+
+    @Override
+    public int insertChunk(String type, String payload, int maxAttempts, List<Ticket> chunk) {
+        if (chunk.isEmpty()) return 0;
+        StringBuilder sql = new StringBuilder("MERGE INTO batch_task t USING (VALUES ");
+        List<Object> args = new ArrayList<>(chunk.size() * 2 + 5);
+        for (int i = 0; i < chunk.size(); i++) {
+            if (i > 0) sql.append(',');
+            sql.append("(CAST(? AS VARCHAR(255)), CAST(? AS TIMESTAMP))");
+            args.add(chunk.get(i).ticketNo);
+            args.add(chunk.get(i).notBefore);
+        }
+        sql.append(") AS s(ticket_no, not_before) ON t.ticket_no = s.ticket_no " +
+                "WHEN NOT MATCHED THEN INSERT (ticket_no, type, payload, priority, status, attempts, max_attempts, " +
+                "not_before, created_at, updated_at) " +
+                "VALUES (s.ticket_no, CAST(? AS VARCHAR(64)), CAST(? AS CLOB), 0, 'PENDING', 0, CAST(? AS INTEGER), " +
+                "s.not_before, CAST(? AS TIMESTAMP), CAST(? AS TIMESTAMP))");
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        args.add(type);
+        args.add(payload);
+        args.add(maxAttempts);
+        args.add(now);
+        args.add(now);
+        return jdbc.update(sql.toString(), args.toArray());
+    }
+}
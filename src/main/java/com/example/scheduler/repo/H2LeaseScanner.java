@@ -0,0 +1,31 @@
+package com.example.scheduler.repo;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 内嵌 H2：与 MySQL 相同的 TIMESTAMPADD 写法；H2 不支持 SKIP LOCKED，并发回收时等待对方提交
+ */
+@Repository
+@Profile("h2")
+@RequiredArgsConstructor
+public class H2LeaseScanner implements LeaseScanner {
+
+    private final JdbcTemplate jdbc;
+
+    @Override
+    public List<ClaimedTask> lockExpired(Duration timeout, int limit) {
+        String sql =
+                "SELECT id, type, attempts, max_attempts FROM batch_task " +
+                        "WHERE status='RUNNING' AND heartbeat_at < TIMESTAMPADD(MICROSECOND, ?, CURRENT_TIMESTAMP(3)) " +
+                        "ORDER BY id " +
+                        "LIMIT " + Math.max(1, limit) + " " +
+                        "FOR UPDATE";
+        return jdbc.query(sql, EXPIRED, -timeout.toMillis() * 1000L);
+    }
+}
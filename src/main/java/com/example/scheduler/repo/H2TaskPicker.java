@@ -0,0 +1,51 @@
+package com.example.scheduler.repo;
+
+import com.example.scheduler.metrics.ClaimPhase;
+import com.example.scheduler.metrics.EngineMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 内嵌 H2（本地单机 / 压测）：MERGE ... USING (有序 LIMIT 子查询) 按主键打上 claim_token，再按 token 取回。
+ * H2 对 UPDATE ... WHERE id IN (子查询) 会逐行求值子查询，改用 MERGE 只按主键连接选中的几行；
+ * ON 条件再判一次 status，两个领取者同时选中同一行时只有一方能更新成功。
+ */
+@Repository
+@Profile("h2")
+@RequiredArgsConstructor
+public class H2TaskPicker implements TaskPicker {
+
+    private final JdbcTemplate jdbc;
+    private final EngineMetrics metrics;
+
+    @Override
+    public List<ClaimedTask> claim(String type, int limit, String owner) {
+        String token = UUID.randomUUID().toString();
+        String sql =
+                "MERGE INTO batch_task t USING (" +
+                        "  SELECT id FROM batch_task " +
+                        "  WHERE status='PENDING' AND type=? AND not_before <= CURRENT_TIMESTAMP(3) " +
+                        "  ORDER BY priority DESC, id ASC " +
+                        "  LIMIT " + Math.max(1, limit) +
+                        ") c ON t.id = c.id AND t.status = 'PENDING' " +
+                        "WHEN MATCHED THEN UPDATE SET status='RUNNING', owner=?, claim_token=?, " +
+                        "    heartbeat_at=CURRENT_TIMESTAMP(3), updated_at=CURRENT_TIMESTAMP(3)";
+        long t0 = System.nanoTime();
+        int marked = jdbc.update(sql, type, owner, token);
+        long t1 = System.nanoTime();
+        metrics.claimPhase(ClaimPhase.MARK, t1 - t0);
+        if (marked == 0) return List.of();
+        List<ClaimedTask> tasks = jdbc.query(
+                "SELECT id, type, payload, attempts, max_attempts " +
+                        "FROM batch_task WHERE claim_token=? " +
+                        "ORDER BY priority DESC, id ASC",
+                ClaimedTask.ROW_MAPPER, token);
+        metrics.claimPhase(ClaimPhase.FETCH, System.nanoTime() - t1);
+        return tasks;
+    }
+}
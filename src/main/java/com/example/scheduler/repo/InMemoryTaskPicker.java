@@ -0,0 +1,256 @@
+package com.example.scheduler.repo;
+
+import com.example.scheduler.config.SchedulerProperties;
+import com.example.scheduler.metrics.ClaimPhase;
+import com.example.scheduler.metrics.EngineMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 纯内存领取（scheduler.picker.mode=memory，仅限单节点）：
+ * 1) 后台同步线程把 PENDING 行按 updated_at 增量装入内存，并按 resync-interval 定期全量重扫，
+ *    每个类型一个按 priority DESC, id ASC 排序的队列（同 idx_task_pick）；
+ * 2) claim 只在内存中出队，微秒级返回；
+ * 3) RUNNING 标记异步批量回写（write-behind），CompletionBuffer 回写结果前会先强制刷出。
+ * 多个节点同时使用会重复执行，集群部署请用数据库 picker。
+ */
+@Slf4j
+@Primary
+@Repository
+@ConditionalOnProperty(prefix = "scheduler.picker", name = "mode", havingValue = "memory")
+public class InMemoryTaskPicker implements TaskPicker {
+
+    private static final Comparator<Entry> PICK_ORDER =
+            Comparator.comparingInt((Entry e) -> e.priority).reversed().thenComparingLong(e -> e.id);
+
+    private static final String MARK_RUNNING =
+            "UPDATE batch_task SET status='RUNNING', owner=?, heartbeat_at=CURRENT_TIMESTAMP, updated_at=? WHERE id=? AND status='PENDING'";
+
+    private static final String SELECT_PENDING =
+            "SELECT id, type, payload, priority, attempts, max_attempts, not_before FROM batch_task WHERE status='PENDING'";
+    private static final String SELECT_PENDING_IDS = "SELECT id FROM batch_task WHERE status='PENDING'";
+    private static final int LOAD_CHUNK = 500;
+
+    private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate named;
+    private final SchedulerProperties props;
+    private final EngineMetrics metrics;
+
+    private final Map<String, TypeQueue> queues = new ConcurrentHashMap<>();
+    /**
+     * 内存中排队或已领取但 RUNNING 尚未落库的 id，增量装载时跳过
+     */
+    private final Set<Long> known = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedQueue<Mark> pendingMarks = new ConcurrentLinkedQueue<>();
+
+    private Timestamp watermark;
+    private long lastFullScan;
+    private volatile boolean running;
+    private Thread syncThread;
+
+    public InMemoryTaskPicker(JdbcTemplate jdbc, SchedulerProperties props, EngineMetrics metrics) {
+        this.jdbc = jdbc;
+        this.named = new NamedParameterJdbcTemplate(jdbc);
+        this.props = props;
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        syncThread = new Thread(this::syncLoop, "memory-picker-sync");
+        syncThread.setDaemon(true);
+        syncThread.start();
+        log.info("In-memory task picker enabled (single-node mode)");
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (syncThread != null) {
+            syncThread.interrupt();
+            syncThread.join(5000L);
+        }
+        flushPendingClaims();
+    }
+
+    @Override
+    public List<ClaimedTask> claim(String type, int limit, String owner) {
+        TypeQueue q = queues.get(type);
+        if (q == null) return List.of();
+        long t0 = System.nanoTime();
+        List<Entry> taken = q.poll(limit, System.currentTimeMillis());
+        metrics.claimPhase(ClaimPhase.DEQUEUE, System.nanoTime() - t0);
+        if (taken.isEmpty()) return List.of();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<ClaimedTask> out = new ArrayList<>(taken.size());
+        for (Entry e : taken) {
+            pendingMarks.add(new Mark(e.id, owner, now));
+            out.add(new ClaimedTask(e.id, type, e.payload, e.attempts, e.maxAttempts));
+        }
+        return out;
+    }
+
+    /**
+     * 把已领取的 RUNNING 标记写回数据库
+     */
+    @Override
+    public synchronized void flushPendingClaims() {
+        if (pendingMarks.isEmpty()) return;
+        long t0 = System.nanoTime();
+        List<Mark> marks = new ArrayList<>();
+        for (Mark m; (m = pendingMarks.poll()) != null; ) marks.add(m);
+        List<Object[]> args = new ArrayList<>(marks.size());
+        for (Mark m : marks) args.add(new Object[]{m.owner, m.at, m.id});
+        int[] counts = jdbc.batchUpdate(MARK_RUNNING, args);
+        for (int i = 0; i < marks.size(); i++) {
+            if (counts[i] == 0) {
+                log.warn("Write-behind claim of task id={} found it no longer PENDING", marks.get(i).id);
+            }
+            known.remove(marks.get(i).id);
+        }
+        metrics.claimPhase(ClaimPhase.WRITE_BEHIND, System.nanoTime() - t0);
+    }
+
+    private void syncLoop() {
+        long interval = Math.max(10L, props.getPicker().getSyncInterval().toMillis());
+        while (running) {
+            try {
+                flushPendingClaims();
+                refill();
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("In-memory picker sync failed", e);
+                try {
+                    Thread.sleep(Math.max(interval, 1000L));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 按 updated_at 增量装载 PENDING 行（新入队、重试、租约回收都会刷新 updated_at）。
+     * updated_at 在语句执行时取值，提交可能晚于下一次增量查询的水位（长事务、提交慢），
+     * 这样的行增量查询永远看不到，由定期的全量重扫补上。
+     * 与 flushPendingClaims 互斥，读到的不会是自己刚领取、尚未落库的旧状态。
+     */
+    private synchronized void refill() {
+        long t0 = System.nanoTime();
+        Timestamp since = watermark;
+        Timestamp startedAt = new Timestamp(System.currentTimeMillis());
+        boolean full = since == null || startedAt.getTime() - lastFullScan >= props.getPicker().getResyncInterval().toMillis();
+        List<Entry> rows = full
+                ? loadMissing()
+                // 留 1s 重叠，防止同一毫秒内提交的行被漏掉；重复行由 known 去重
+                : jdbc.query(SELECT_PENDING + " AND updated_at >= ?", (rs, i) -> Entry.of(rs), new Timestamp(since.getTime() - 1000L));
+        int added = 0;
+        for (Entry e : rows) {
+            if (!known.add(e.id)) continue;
+            queues.computeIfAbsent(e.type, t -> new TypeQueue()).offer(e);
+            added++;
+        }
+        watermark = startedAt;
+        if (full) lastFullScan = startedAt.getTime();
+        metrics.claimPhase(ClaimPhase.REFILL, System.nanoTime() - t0);
+        if (added > 0) log.debug("In-memory picker loaded {} pending tasks{}", added, full ? " (full rescan)" : "");
+    }
+
+    /**
+     * 全量重扫：先只取 PENDING 的 id，内存里没有的再分块取整行，不为已在队列中的行反复读取 payload
+     */
+    private List<Entry> loadMissing() {
+        List<Long> missing = new ArrayList<>();
+        for (Long id : jdbc.queryForList(SELECT_PENDING_IDS, Long.class)) {
+            if (!known.contains(id)) missing.add(id);
+        }
+        List<Entry> rows = new ArrayList<>(missing.size());
+        for (int i = 0; i < missing.size(); i += LOAD_CHUNK) {
+            MapSqlParameterSource p = new MapSqlParameterSource("ids", missing.subList(i, Math.min(missing.size(), i + LOAD_CHUNK)));
+            rows.addAll(named.query(SELECT_PENDING + " AND id IN (:ids)", p, (rs, n) -> Entry.of(rs)));
+        }
+        return rows;
+    }
+
+    /**
+     * 单个类型的队列：已到期的按领取顺序排，未到期的按 not_before 排，出队时再提升
+     */
+    private static class TypeQueue {
+        private final PriorityQueue<Entry> ready = new PriorityQueue<>(PICK_ORDER);
+        private final PriorityQueue<Entry> delayed = new PriorityQueue<>(Comparator.comparingLong((Entry e) -> e.notBefore));
+
+        synchronized void offer(Entry e) {
+            delayed.add(e);
+        }
+
+        synchronized List<Entry> poll(int limit, long now) {
+            while (!delayed.isEmpty() && delayed.peek().notBefore <= now) {
+                ready.add(delayed.poll());
+            }
+            List<Entry> out = new ArrayList<>(Math.min(limit, ready.size()));
+            while (out.size() < limit && !ready.isEmpty()) {
+                out.add(ready.poll());
+            }
+            return out;
+        }
+    }
+
+    private static class Entry {
+        long id;
+        String type;
+        String payload;
+        int priority;
+        Integer attempts;
+        Integer maxAttempts;
+        long notBefore;
+
+        static Entry of(ResultSet rs) throws SQLException {
+            Entry e = new Entry();
+            e.id = rs.getLong("id");
+            e.type = rs.getString("type");
+            e.payload = rs.getString("payload");
+            e.priority = rs.getInt("priority");
+            e.attempts = rs.getObject("attempts", Integer.class);
+            e.maxAttempts = rs.getObject("max_attempts", Integer.class);
+            Timestamp nb = rs.getTimestamp("not_before");
+            e.notBefore = nb == null ? 0L : nb.getTime();
+            return e;
+        }
+    }
+
+    private static class Mark {
+        final long id;
+        final String owner;
+        final Timestamp at;
+
+        Mark(long id, String owner, Timestamp at) {
+            this.id = id;
+            this.owner = owner;
+            this.at = at;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.scheduler.repo;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 查找租约过期的 RUNNING 任务。过期按数据库时钟判断：heartbeat_at 由数据库的 CURRENT_TIMESTAMP 写入，
+ * 截止时间也在 SQL 里由 CURRENT_TIMESTAMP 减去超时得到，不受各节点时钟偏差影响。
+ */
+public interface LeaseScanner {
+    RowMapper<ClaimedTask> EXPIRED = (rs, i) -> new ClaimedTask(
+            rs.getLong("id"),
+            rs.getString("type"),
+            null,
+            rs.getObject("attempts", Integer.class),
+            rs.getObject("max_attempts", Integer.class));
+
+    /**
+     * 锁定并返回至多 limit 条 heartbeat_at 早于（数据库当前时间 - timeout）的 RUNNING 任务（不含 payload），
+     * 已被其他事务锁住的行跳过；须在事务中调用，行锁持有到事务结束
+     */
+    List<ClaimedTask> lockExpired(Duration timeout, int limit);
+}
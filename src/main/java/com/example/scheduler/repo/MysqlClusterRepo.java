@@ -0,0 +1,27 @@
+package com.example.scheduler.repo;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * MySQL：CURRENT_TIMESTAMP(3)（默认只到秒），TIMESTAMPADD 加减时长。内嵌 H2 支持同样的写法，共用这一实现
+ */
+@Repository
+@Profile({"mysql", "h2"})
+public class MysqlClusterRepo extends ClusterRepo {
+
+    public MysqlClusterRepo(JdbcTemplate jdbc) {
+        super(jdbc);
+    }
+
+    @Override
+    protected String now() {
+        return "CURRENT_TIMESTAMP(3)";
+    }
+
+    @Override
+    protected String nowPlusMicros() {
+        return "TIMESTAMPADD(MICROSECOND, ?, " + now() + ")";
+    }
+}
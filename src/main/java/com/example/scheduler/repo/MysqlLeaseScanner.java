@@ -0,0 +1,31 @@
+package com.example.scheduler.repo;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * MySQL：TIMESTAMPADD 从 CURRENT_TIMESTAMP(3) 减去超时
+ */
+@Repository
+@Profile("mysql")
+@RequiredArgsConstructor
+public class MysqlLeaseScanner implements LeaseScanner {
+
+    private final JdbcTemplate jdbc;
+
+    @Override
+    public List<ClaimedTask> lockExpired(Duration timeout, int limit) {
+        String sql =
+                "SELECT id, type, attempts, max_attempts FROM batch_task " +
+                        "WHERE status='RUNNING' AND heartbeat_at < TIMESTAMPADD(MICROSECOND, ?, CURRENT_TIMESTAMP(3)) " +
+                        "ORDER BY id " +
+                        "LIMIT " + Math.max(1, limit) + " " +
+                        "FOR UPDATE SKIP LOCKED";
+        return jdbc.query(sql, EXPIRED, -timeout.toMillis() * 1000L);
+    }
+}
@@ -1,47 +1,52 @@
 package com.example.scheduler.repo;
 
+import com.example.scheduler.metrics.ClaimPhase;
+import com.example.scheduler.metrics.EngineMetrics;
+import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Transactional;
 
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
 import java.util.List;
-import java.util.Optional;
+import java.util.UUID;
 
+/**
+ * MySQL 没有 UPDATE ... RETURNING：先用多表 UPDATE 打上本次的 claim_token，再按 token 取回一次。
+ * 要领取的行由派生表 SELECT id ... FOR UPDATE SKIP LOCKED 选出（单表 UPDATE ... LIMIT 不支持 SKIP LOCKED），
+ * 并发领取者跳过彼此锁住的行而不是排队等待。两条语句各自自动提交，不需要额外的事务往返。
+ */
 @Repository
 @Profile("mysql")
+@RequiredArgsConstructor
 public class MysqlTaskPicker implements TaskPicker {
 
-    @PersistenceContext
-    private EntityManager em;
+    private final JdbcTemplate jdbc;
+    private final EngineMetrics metrics;
 
     @Override
-    @Transactional
-    @SuppressWarnings("unchecked")
-    public Optional<Long> lockOnePendingId() {
+    public List<ClaimedTask> claim(String type, int limit, String owner) {
+        String token = UUID.randomUUID().toString();
         String sql =
-                "SELECT id " +
-                        "FROM batch_task " +
-                        "WHERE status='PENDING' AND not_before <= CURRENT_TIMESTAMP(3) " +
-                        "ORDER BY priority DESC, id ASC " +
-                        "LIMIT 1 " +
-                        "FOR UPDATE SKIP LOCKED";
-        List<Number> ids = em.createNativeQuery(sql).getResultList();
-        return ids.isEmpty() ? Optional.empty() : Optional.of(ids.get(0).longValue());
+                "UPDATE batch_task t JOIN (" +
+                        "  SELECT id FROM batch_task " +
+                        "  WHERE status='PENDING' AND type=? AND not_before <= CURRENT_TIMESTAMP(3) " +
+                        "  ORDER BY priority DESC, id ASC " +
+                        "  LIMIT " + Math.max(1, limit) +
+                        "  FOR UPDATE SKIP LOCKED" +
+                        ") c ON c.id = t.id " +
+                        "SET t.status='RUNNING', t.owner=?, t.claim_token=?, " +
+                        "    t.heartbeat_at=CURRENT_TIMESTAMP(3), t.updated_at=CURRENT_TIMESTAMP(3)";
+        long t0 = System.nanoTime();
+        int marked = jdbc.update(sql, type, owner, token);
+        long t1 = System.nanoTime();
+        metrics.claimPhase(ClaimPhase.MARK, t1 - t0);
+        if (marked == 0) return List.of();
+        List<ClaimedTask> tasks = jdbc.query(
+                "SELECT id, type, payload, attempts, max_attempts " +
+                        "FROM batch_task WHERE claim_token=? " +
+                        "ORDER BY priority DESC, id ASC",
+                ClaimedTask.ROW_MAPPER, token);
+        metrics.claimPhase(ClaimPhase.FETCH, System.nanoTime() - t1);
+        return tasks;
     }
-
-    @Override
-    @Transactional
-    public int markRunning(Long id, String owner) {
-        String sql =
-                "UPDATE batch_task " +
-                        "SET status='RUNNING', owner=:owner, " +
-                        "    heartbeat_at=CURRENT_TIMESTAMP(3), updated_at=CURRENT_TIMESTAMP(3) " +
-                        "WHERE id=:id";
-        return em.createNativeQuery(sql)
-                .setParameter("owner", owner)
-                .setParameter("id", id)
-                .executeUpdate();
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,45 @@
+package com.example.scheduler.repo;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MySQL：多行 INSERT IGNORE，撞到 ticket_no 唯一键的行被跳过，影响行数即新插入数。
+ * 不用 ON DUPLICATE KEY UPDATE：驱动默认返回 found rows，重复行也会计数。
+ */
+@Repository
+@Profile("mysql")
+@RequiredArgsConstructor
+public class MysqlTicketWriter implements TicketWriter {
+
+    private final JdbcTemplate jdbc;
+
+    @Override
+    public int insertChunk(String type, String payload, int maxAttempts, List<Ticket> chunk) {
+        if (chunk.isEmpty()) return 0;
+        StringBuilder sql = new StringBuilder(
+                "INSERT IGNORE INTO batch_task(ticket_no, type, payload, priority, status, attempts, max_attempts, " +
+                        "not_before, created_at, updated_at) VALUES ");
+        List<Object> args = new ArrayList<>(chunk.size() * 7);
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (int i = 0; i < chunk.size(); i++) {
+            if (i > 0) sql.append(',');
+            sql.append("(?, ?, ?, 0, 'PENDING', 0, ?, ?, ?, ?)");
+            Ticket t = chunk.get(i);
+            args.add(t.ticketNo);
+            args.add(type);
+            args.add(payload);
+            args.add(maxAttempts);
+            args.add(t.notBefore);
+            args.add(now);
+            args.add(now);
+        }
+        return jdbc.update(sql.toString(), args.toArray());
+    }
+}
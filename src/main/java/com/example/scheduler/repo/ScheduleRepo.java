@@ -13,7 +13,15 @@ import java.util.List;
 public interface ScheduleRepo extends JpaRepository<BatchSchedule, Long> {
     List<BatchSchedule> findByEnabled(Integer enabled);
 
+    /**
+     * 增量刷新：自 since 起定义有变化的规则（含已停用的，用于出堆）
+     */
+    List<BatchSchedule> findByUpdatedAtGreaterThanEqual(Timestamp since);
+
+    /**
+     * 只向前推进 last_fire_at（多个节点先后写入时不会回退）
+     */
     @Modifying
-    @Query(value = "UPDATE batch_schedule SET last_fire_at=?2 WHERE id=?1", nativeQuery = true)
-    int updateLastFireAt(Long id, Timestamp ts);
+    @Query(value = "UPDATE batch_schedule SET last_fire_at=?2 WHERE id=?1 AND (last_fire_at IS NULL OR last_fire_at < ?2)", nativeQuery = true)
+    int advanceLastFireAt(Long id, Timestamp ts);
 }
\ No newline at end of file
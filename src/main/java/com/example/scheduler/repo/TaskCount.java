@@ -0,0 +1,15 @@
+package com.example.scheduler.repo;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 按 status/type 聚合的任务数
+ */
+@Getter
+@AllArgsConstructor
+public class TaskCount {
+    private final String status;
+    private final String type;
+    private final long count;
+}
@@ -1,9 +1,17 @@
 package com.example.scheduler.repo;
 
-import java.util.Optional;
+import java.util.List;
 
 public interface TaskPicker {
-    Optional<Long> lockOnePendingId();
+    /**
+     * 原子领取至多 limit 条指定类型、可执行的 PENDING 任务（按 priority DESC, id ASC），
+     * 置为 RUNNING 并写入 owner，返回被领取行的投影
+     */
+    List<ClaimedTask> claim(String type, int limit, String owner);
 
-    int markRunning(Long id, String owner);
-}
\ No newline at end of file
+    /**
+     * 异步标记 RUNNING 的实现（内存 picker）在结果回写前把标记刷到数据库；数据库 picker 无需处理
+     */
+    default void flushPendingClaims() {
+    }
+}
@@ -1,19 +1,63 @@
 package com.example.scheduler.repo;
 
 import com.example.scheduler.domain.BatchTask;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface TaskRepo extends JpaRepository<BatchTask, Long> {
     Optional<BatchTask> findTopByStatusAndNotBeforeLessThanEqualOrderByPriorityDescIdAsc(String status, Timestamp notBefore);
 
+    /**
+     * 面板分页：按 id 倒序的 keyset 分页，beforeId 为上一页最后一条的 id（首页传 null）；
+     * 只取投影字段，status/type 为 null 表示不过滤。
+     */
+    @Query("SELECT new com.example.scheduler.repo.TaskSummary(t.id, t.type, t.status, t.attempts, t.createdAt, t.updatedAt, t.finishAt) " +
+            "FROM BatchTask t WHERE (:status IS NULL OR t.status = :status) AND (:type IS NULL OR t.type = :type) " +
+            "AND (:beforeId IS NULL OR t.id < :beforeId) ORDER BY t.id DESC")
+    List<TaskSummary> findPage(@Param("status") String status, @Param("type") String type,
+                               @Param("beforeId") Long beforeId, Pageable page);
+
+    @Query("SELECT new com.example.scheduler.repo.TaskCount(t.status, t.type, COUNT(t)) FROM BatchTask t GROUP BY t.status, t.type")
+    List<TaskCount> countByStatusAndType();
+
+    /**
+     * 已到期但仍未被领取的最早 not_before，走 idx_task_pick
+     */
+    @Query("SELECT MIN(t.notBefore) FROM BatchTask t WHERE t.status = 'PENDING' AND t.notBefore <= :now")
+    Timestamp oldestRunnablePending(@Param("now") Timestamp now);
+
+    /**
+     * 按 ticket 统计一组任务的状态（如合并任务检查各分片子任务是否都已完成）
+     */
+    @Query("SELECT new com.example.scheduler.repo.TaskCount(t.status, t.type, COUNT(t)) FROM BatchTask t WHERE t.ticketNo IN :tickets GROUP BY t.status, t.type")
+    List<TaskCount> countByTicketNoIn(@Param("tickets") Collection<String> tickets);
+
     @Modifying
-    @Query(value = "INSERT INTO batch_task(ticket_no, type, payload, priority, status, attempts, max_attempts, not_before) " + "SELECT ?1, ?2, ?3, ?4, ?5, ?6, ?7, ?8 WHERE NOT EXISTS (SELECT 1 FROM batch_task WHERE ticket_no=?1)", nativeQuery = true)
+    @Query(value = "INSERT INTO batch_task(ticket_no, type, payload, priority, status, attempts, max_attempts, not_before, created_at, updated_at) " + "SELECT ?1, ?2, ?3, ?4, ?5, ?6, ?7, ?8, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP WHERE NOT EXISTS (SELECT 1 FROM batch_task WHERE ticket_no=?1)", nativeQuery = true)
     int insertIfNotExists(String ticketNo, String type, String payload, int priority, String status, int attempts, int maxAttempts, Timestamp notBefore);
+
+    @Modifying
+    @Query(value = "UPDATE batch_task SET heartbeat_at=CURRENT_TIMESTAMP WHERE id IN (:ids) AND owner=:owner AND status='RUNNING'", nativeQuery = true)
+    int renewLeases(@Param("ids") Collection<Long> ids, @Param("owner") String owner);
+
+    /**
+     * 租约过期回收：仍有执行次数的退回 PENDING 立即重试，用尽的置为 FAILED；两种情况都计一次执行
+     */
+    @Modifying
+    @Query(value = "UPDATE batch_task SET status=:status, " +
+            "finish_at=CASE WHEN :status='FAILED' THEN CURRENT_TIMESTAMP ELSE NULL END, " +
+            "message='Lease expired', owner=NULL, not_before=CURRENT_TIMESTAMP, updated_at=CURRENT_TIMESTAMP, " +
+            "attempts=COALESCE(attempts,0)+1 " +
+            "WHERE id IN (:ids) AND status='RUNNING'", nativeQuery = true)
+    int reapExpiredLeases(@Param("ids") Collection<Long> ids, @Param("status") String status);
 }
\ No newline at end of file
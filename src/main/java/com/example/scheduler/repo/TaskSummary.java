@@ -0,0 +1,22 @@
+package com.example.scheduler.repo;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Date;
+
+/**
+ * 面板列表用的任务投影：不含 payload / message 等大字段
+ * （时间列用 Date 声明：Hibernate 按 Date 匹配构造器，实际值仍是 Timestamp）
+ */
+@Getter
+@AllArgsConstructor
+public class TaskSummary {
+    private final Long id;
+    private final String type;
+    private final String status;
+    private final Integer attempts;
+    private final Date createdAt;
+    private final Date updatedAt;
+    private final Date finishAt;
+}
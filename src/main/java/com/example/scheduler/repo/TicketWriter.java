@@ -0,0 +1,38 @@
+package com.example.scheduler.repo;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * 按方言批量写入 cron 触发的任务：依赖 ticket_no 唯一键去重，已存在的 ticket 被静默跳过。
+ * 一次调用按 CHUNK 拆成若干条多行语句，不再是每个触发时间一条 INSERT ... WHERE NOT EXISTS。
+ */
+public interface TicketWriter {
+    int CHUNK = 500;
+
+    /**
+     * @return 实际新插入的任务数
+     */
+    default int insert(String type, String payload, int maxAttempts, List<Ticket> tickets) {
+        int inserted = 0;
+        for (int i = 0; i < tickets.size(); i += CHUNK) {
+            inserted += insertChunk(type, payload, maxAttempts, tickets.subList(i, Math.min(tickets.size(), i + CHUNK)));
+        }
+        return inserted;
+    }
+
+    int insertChunk(String type, String payload, int maxAttempts, List<Ticket> chunk);
+
+    /**
+     * 一个触发时间：幂等键 + 可执行时间
+     */
+    final class Ticket {
+        public final String ticketNo;
+        public final Timestamp notBefore;
+
+        public Ticket(String ticketNo, Timestamp notBefore) {
+            this.ticketNo = ticketNo;
+            this.notBefore = notBefore;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.scheduler.service;
+
+import com.example.scheduler.config.SchedulerProperties;
+import com.example.scheduler.metrics.EngineMetrics;
+import com.example.scheduler.repo.ClusterRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 决定本节点负责哪些调度规则：
+ * 1) LEADER：抢占 batch_lease 中的 schedule-fire 租约，持有者触发全部规则；
+ * 2) SHARDED：在 batch_node 登记心跳，按存活节点用 rendezvous hash 划分规则 id，成员变化时只迁移失联节点的那一份。
+ * 租约过期与节点存活都按数据库时钟判断，不依赖各节点时钟同步。
+ * 本地只在“上次续期发起时刻 + leaseDuration - renewInterval”之前认为自己有效（按本机单调时钟计时长），
+ * 续期失败（如数据库不可达）时先于租约在库里过期而停手，避免与接管者同时触发。
+ */
+@Slf4j
+@Service
+public class ClusterCoordinator {
+    static final String FIRE_LEASE = "schedule-fire";
+
+    private final ClusterRepo repo;
+    private final NodeIdentity node;
+    private final SchedulerProperties props;
+
+    /**
+     * System.nanoTime() 时刻，之前本节点有效
+     */
+    private volatile long activeUntilNanos = System.nanoTime();
+    private volatile List<String> members = List.of();
+    /**
+     * 职责可能发生变化（成为/失去 leader、成员变化）时递增，调用方据此重新装载
+     */
+    private volatile long epoch;
+    private volatile boolean leader;
+    /**
+     * 已退出集群；停机时调度线程可能晚于 leave 再跑一次 renew，不能把自己重新登记回去
+     */
+    private volatile boolean left;
+
+    public ClusterCoordinator(ClusterRepo repo, NodeIdentity node, SchedulerProperties props, EngineMetrics metrics) {
+        this.repo = repo;
+        this.node = node;
+        this.props = props;
+        metrics.gauge("scheduler.cluster.active", "1 if this node currently evaluates schedules", this,
+                c -> c.isActive() ? 1d : 0d);
+    }
+
+    @Scheduled(fixedDelayString = "#{@schedulerProperties.cluster.renewInterval.toMillis()}")
+    public void renew() {
+        if (left) return;
+        SchedulerProperties.Cluster cfg = props.getCluster();
+        long start = System.nanoTime();
+        Duration lease = cfg.getLeaseDuration();
+        long activeFor = lease.minus(cfg.getRenewInterval()).toNanos();
+        try {
+            if (cfg.getMode() == SchedulerProperties.ClusterMode.LEADER) {
+                boolean acquired = repo.tryAcquire(FIRE_LEASE, node.id(), lease);
+                if (acquired) activeUntilNanos = start + activeFor;
+                if (acquired != leader) {
+                    leader = acquired;
+                    epoch++;
+                    log.info(acquired ? "Acquired schedule leader lease, node={}" : "Lost schedule leader lease, node={}", node.id());
+                }
+            } else if (cfg.getMode() == SchedulerProperties.ClusterMode.SHARDED) {
+                repo.heartbeatNode(node.id());
+                List<String> live = repo.liveNodes(lease);
+                if (!live.contains(node.id())) {
+                    live = new ArrayList<>(live);
+                    live.add(node.id());
+                }
+                activeUntilNanos = start + activeFor;
+                if (!live.equals(members)) {
+                    log.info("Schedule shard members changed: {} -> {}", members, live);
+                    members = List.copyOf(live);
+                    epoch++;
+                }
+                repo.removeNodesIdleFor(lease.multipliedBy(10));
+            }
+        } catch (DataAccessException e) {
+            log.warn("Cluster lease renewal failed, active for another {} ms",
+                    Math.max(0L, (activeUntilNanos - System.nanoTime()) / 1_000_000L), e);
+        }
+    }
+
+    @PreDestroy
+    public void leave() {
+        left = true;
+        activeUntilNanos = System.nanoTime();
+        try {
+            if (props.getCluster().getMode() == SchedulerProperties.ClusterMode.LEADER && leader) {
+                repo.release(FIRE_LEASE, node.id());
+            } else if (props.getCluster().getMode() == SchedulerProperties.ClusterMode.SHARDED) {
+                repo.removeNode(node.id());
+            }
+        } catch (DataAccessException e) {
+            log.warn("Failed to leave cluster cleanly, others take over after lease expiry", e);
+        }
+    }
+
+    /**
+     * 本节点当前是否应当触发调度
+     */
+    public boolean isActive() {
+        if (props.getCluster().getMode() == SchedulerProperties.ClusterMode.ALL) return true;
+        return System.nanoTime() - activeUntilNanos < 0;
+    }
+
+    /**
+     * 该规则是否由本节点触发
+     */
+    public boolean owns(long scheduleId) {
+        if (!isActive()) return false;
+        if (props.getCluster().getMode() != SchedulerProperties.ClusterMode.SHARDED) return true;
+        List<String> m = members;
+        String best = null;
+        long bestScore = Long.MIN_VALUE;
+        for (String n : m) {
+            long score = mix(scheduleId * 0x9E3779B97F4A7C15L ^ n.hashCode());
+            if (best == null || score > bestScore) {
+                best = n;
+                bestScore = score;
+            }
+        }
+        return node.id().equals(best);
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    /**
+     * splitmix64 终结函数，把 (规则, 节点) 打散成均匀的分数
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
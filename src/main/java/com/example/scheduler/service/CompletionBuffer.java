@@ -0,0 +1,214 @@
+package com.example.scheduler.service;
+
+import com.example.scheduler.config.SchedulerProperties;
+import com.example.scheduler.jfr.CompletionFlushEvent;
+import com.example.scheduler.metrics.EngineMetrics;
+import com.example.scheduler.repo.TaskPicker;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 完成回写缓冲：worker 只负责入队，由单独线程按“最多 N ms 或 M 条”攒批，
+ * 在一个事务里用 JDBC batch 更新 batch_task、插入 batch_run。
+ * 队列有界，写库跟不上时 worker 在 add 处阻塞；停机时先排空再退出。
+ */
+@Slf4j
+@Component
+public class CompletionBuffer {
+
+    private static final String UPDATE_DONE =
+            "UPDATE batch_task SET status=?, attempts=?, message=?, finish_at=?, updated_at=? " +
+                    "WHERE id=? AND owner=? AND status='RUNNING'";
+    private static final String UPDATE_RETRY =
+            "UPDATE batch_task SET status='PENDING', attempts=?, message=?, not_before=?, owner=NULL, updated_at=? " +
+                    "WHERE id=? AND owner=? AND status='RUNNING'";
+    private static final String INSERT_RUN =
+            "INSERT INTO batch_run(task_id, started_at, ended_at, status, message) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbc;
+    private final TaskPicker picker;
+    private final SchedulerProperties props;
+    private final TransactionTemplate tx;
+    private final EngineMetrics metrics;
+    private final BlockingQueue<Completion> queue;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public CompletionBuffer(JdbcTemplate jdbc, TaskPicker picker, PlatformTransactionManager txManager,
+                            SchedulerProperties props, EngineMetrics metrics) {
+        this.jdbc = jdbc;
+        this.picker = picker;
+        this.props = props;
+        this.metrics = metrics;
+        this.tx = new TransactionTemplate(txManager);
+        this.tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, props.getCompletion().getQueueCapacity()));
+        metrics.gauge("scheduler.completion.queue", "Completions waiting to be written back", queue, BlockingQueue::size);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = new Thread(this::loop, "task-completion-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * 停机：等待 flusher 把队列写完
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (flusher != null) flusher.join(props.getEngine().getShutdownWaitSeconds() * 1000L);
+        if (!queue.isEmpty()) {
+            log.error("Completion buffer stopped with {} unflushed results", queue.size());
+        }
+    }
+
+    /**
+     * worker 调用：队列满时阻塞（背压）
+     */
+    public void add(Completion c) throws InterruptedException {
+        queue.put(c);
+    }
+
+    private void loop() {
+        long interval = Math.max(1L, props.getCompletion().getFlushInterval().toMillis());
+        int maxBatch = Math.max(1, props.getCompletion().getMaxBatch());
+        List<Completion> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Completion first = queue.poll(interval, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(interval);
+                while (batch.size() < maxBatch) {
+                    long waitNs = deadline - System.nanoTime();
+                    Completion c = waitNs > 0 ? queue.poll(waitNs, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (c == null) break;
+                    batch.add(c);
+                }
+                flushWithRetry(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void flushWithRetry(List<Completion> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                flush(batch);
+                return;
+            } catch (RuntimeException e) {
+                if (!running && attempt >= 3) {
+                    log.error("Dropping {} completion results after {} failed flushes on shutdown", batch.size(), attempt, e);
+                    return;
+                }
+                log.warn("Completion flush failed (attempt {}), {} results kept for retry", attempt, batch.size(), e);
+                Thread.sleep(Math.min(10_000L, 500L * attempt));
+            }
+        }
+    }
+
+    private void flush(List<Completion> batch) {
+        CompletionFlushEvent ev = new CompletionFlushEvent();
+        ev.begin();
+        long t0 = System.nanoTime();
+        // 结果的 UPDATE 以 status='RUNNING' 为条件，write-behind 的领取标记必须先落库
+        picker.flushPendingClaims();
+        List<Object[]> done = new ArrayList<>();
+        List<Completion> doneRefs = new ArrayList<>();
+        List<Object[]> retry = new ArrayList<>();
+        List<Completion> retryRefs = new ArrayList<>();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (Completion c : batch) {
+            if (c.getNotBefore() != null) {
+                retry.add(new Object[]{c.getAttempts(), c.getMessage(), c.getNotBefore(), now, c.getTaskId(), c.getOwner()});
+                retryRefs.add(c);
+            } else {
+                done.add(new Object[]{c.getStatus(), c.getAttempts(), c.getMessage(), c.getFinishAt(), now, c.getTaskId(), c.getOwner()});
+                doneRefs.add(c);
+            }
+        }
+
+        Integer lost = tx.execute(s -> {
+            List<Object[]> runs = new ArrayList<>(batch.size());
+            int n = addRuns(runs, doneRefs, done.isEmpty() ? new int[0] : jdbc.batchUpdate(UPDATE_DONE, done));
+            n += addRuns(runs, retryRefs, retry.isEmpty() ? new int[0] : jdbc.batchUpdate(UPDATE_RETRY, retry));
+            jdbc.batchUpdate(INSERT_RUN, runs);
+            return n;
+        });
+        metrics.completionFlushed(batch.size(), System.nanoTime() - t0);
+        ev.end();
+        if (ev.shouldCommit()) {
+            ev.batchSize = batch.size();
+            ev.lost = lost == null ? 0 : lost;
+            ev.commit();
+        }
+    }
+
+    /**
+     * @return 租约已丢失的条数
+     */
+    private int addRuns(List<Object[]> runs, List<Completion> refs, int[] counts) {
+        int lost = 0;
+        for (int i = 0; i < refs.size(); i++) {
+            Completion c = refs.get(i);
+            String runStatus = c.isSucceed() ? "SUCCEED" : "DEFERRED".equals(c.getStatus()) ? "DEFERRED" : "FAILED";
+            if (counts[i] == 0) {
+                // 租约已被回收（可能已由其他节点重新领取），只记录本次 run，不覆盖任务状态
+                log.warn("Lease lost before completion, id={}, owner={}", c.getTaskId(), c.getOwner());
+                runStatus = "LOST";
+                lost++;
+            } else if (counts[i] != Statement.SUCCESS_NO_INFO && counts[i] < 0) {
+                log.warn("Unexpected update count {} for task id={}", counts[i], c.getTaskId());
+            }
+            runs.add(new Object[]{c.getTaskId(), c.getStartedAt(), c.getFinishAt(), runStatus, c.getMessage()});
+        }
+        return lost;
+    }
+
+    /**
+     * 一次执行的结果
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Completion {
+        private final Long taskId;
+        private final String owner;
+        private final boolean succeed;
+        /**
+         * 终态：SUCCEED / FAILED；重试时忽略，仅 DEFERRED（Runner 推迟执行）记入 batch_run
+         */
+        private final String status;
+        private final int attempts;
+        private final String message;
+        private final Timestamp startedAt;
+        private final Timestamp finishAt;
+        /**
+         * 非空表示回到 PENDING 并在该时间后重试
+         */
+        private final Timestamp notBefore;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.scheduler.service;
+
+import com.example.scheduler.config.SchedulerProperties;
+import com.example.scheduler.repo.ClaimedTask;
+import com.example.scheduler.repo.LeaseScanner;
+import com.example.scheduler.repo.TaskRepo;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 租约维护：
+ * 1) 心跳：每个周期用一条 UPDATE 续期本节点持有的全部 RUNNING 任务
+ * 2) 回收：heartbeat_at 超时的 RUNNING 任务（节点崩溃/失联）退回 PENDING，次数用尽（按类型的重试策略）则 FAILED
+ * heartbeat_at 的写入和超时判断都用数据库时钟，节点之间、节点与数据库之间的时钟偏差不影响回收。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LeaseKeeper {
+    private static final int CHUNK = 500;
+
+    private final TaskRepo taskRepo;
+    private final LeaseScanner leaseScanner;
+    private final RetryPolicy retryPolicy;
+    private final TaskEngine engine;
+    private final NodeIdentity node;
+    private final TaskSignal taskSignal;
+    private final SchedulerProperties props;
+
+    @Scheduled(fixedDelayString = "#{@schedulerProperties.lease.heartbeatInterval.toMillis()}",
+            initialDelayString = "#{@schedulerProperties.lease.heartbeatInterval.toMillis()}")
+    @Transactional
+    public void heartbeat() {
+        List<Long> held = new ArrayList<>(engine.heldTaskIds());
+        if (held.isEmpty()) return;
+        int renewed = 0;
+        for (int i = 0; i < held.size(); i += CHUNK) {
+            renewed += taskRepo.renewLeases(held.subList(i, Math.min(held.size(), i + CHUNK)), node.id());
+        }
+        if (renewed < held.size()) {
+            log.warn("Lease renewal lost {} of {} tasks, owner={}", held.size() - renewed, held.size(), node.id());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "#{@schedulerProperties.lease.reapInterval.toMillis()}",
+            initialDelayString = "#{@schedulerProperties.lease.reapInterval.toMillis()}")
+    @Transactional
+    public void reapExpired() {
+        Duration timeout = props.getLease().getTimeout();
+        int reaped = 0;
+        int failed = 0;
+        List<ClaimedTask> expired;
+        do {
+            expired = leaseScanner.lockExpired(timeout, CHUNK);
+            List<Long> retry = new ArrayList<>();
+            List<Long> exhausted = new ArrayList<>();
+            for (ClaimedTask t : expired) {
+                int attempts = (t.getAttempts() == null ? 0 : t.getAttempts()) + 1;
+                if (attempts >= retryPolicy.maxAttempts(t.getType(), t.getMaxAttempts())) exhausted.add(t.getId());
+                else retry.add(t.getId());
+            }
+            if (!retry.isEmpty()) reaped += taskRepo.reapExpiredLeases(retry, "PENDING");
+            if (!exhausted.isEmpty()) failed += taskRepo.reapExpiredLeases(exhausted, "FAILED");
+        } while (expired.size() == CHUNK);
+        if (reaped + failed > 0) {
+            log.warn("Reaped {} RUNNING tasks with lease older than {} ({} failed, attempts exhausted)", reaped + failed, timeout, failed);
+            taskSignal.signalAfterCommit();
+        }
+    }
+}
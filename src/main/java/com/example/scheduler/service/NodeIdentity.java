@@ -0,0 +1,39 @@
+package com.example.scheduler.service;
+
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.util.UUID;
+
+/**
+ * 本节点在集群中的身份：host#pid#bootId。
+ * bootId 每次启动随机生成，同一主机重启或 pid 复用时租约也不会混淆。
+ */
+@Component
+public class NodeIdentity {
+    private final String id;
+
+    public NodeIdentity() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        if (host.length() > 32) host = host.substring(0, 32);
+        String bootId = UUID.randomUUID().toString().substring(0, 8);
+        this.id = host + "#" + ProcessHandle.current().pid() + "#" + bootId;
+    }
+
+    /**
+     * 写入 batch_task.owner 的值（不超过 64 字符）
+     */
+    public String id() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
@@ -1,16 +1,81 @@
 package com.example.scheduler.service;
 
+import com.example.scheduler.config.SchedulerProperties;
 import lombok.RequiredArgsConstructor;
-import org.springframework.scheduling.annotation.Scheduled;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+
+/**
+ * 自适应轮询：
+ * 1) 领取到任务且仍有空闲额度 → 立即再领
+ * 2) 额度已满 → 等待任务结束的通知
+ * 3) 队列为空 → 指数退避到上限，期间本 JVM 入队会立即唤醒并重置退避；
+ *    隔离舱腾出额度也会唤醒再领一次，但不重置退避（其他类型可能一直是空的）
+ */
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class PollScheduler {
     private final TaskEngine engine;
+    private final TaskSignal signal;
+    private final SchedulerProperties props;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        thread = new Thread(this::loop, "task-poller");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (thread != null) thread.interrupt();
+    }
+
+    private void loop() {
+        SchedulerProperties.Poll cfg = props.getPoll();
+        long min = cfg.getMinBackoff().toMillis();
+        long max = Math.max(min, cfg.getMaxBackoff().toMillis());
+        long backoff = min;
+        try {
+            Thread.sleep(cfg.getInitialDelay().toMillis());
+            while (running) {
+                int claimed = tick();
+                if (claimed > 0) {
+                    backoff = min;
+                    if (!engine.hasFreeCapacity()) {
+                        signal.await(max);
+                    }
+                    continue;
+                }
+                TaskSignal.Wake woke = signal.await(backoff);
+                if (woke == TaskSignal.Wake.WORK) {
+                    backoff = min;
+                } else if (woke == TaskSignal.Wake.TIMEOUT) {
+                    backoff = Math.min(max, backoff * 2);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Task poller stopped");
+    }
 
-    @Scheduled(fixedDelay = 2000L, initialDelay = 3000L)
-    public void tick() {
-        engine.pollAndRunOnce();
+    public int tick() {
+        try {
+            return engine.pollAndRun();
+        } catch (Exception e) {
+            log.warn("Poll failed", e);
+            return 0;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,124 @@
+package com.example.scheduler.service;
+
+import com.example.scheduler.config.SchedulerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * 历史数据保留：finish_at 早于 now - maxAge 的 SUCCEED/FAILED 任务连同其 batch_run
+ * 搬到 *_archive 表（ARCHIVE）或直接删除（PURGE），让热表只保留在途任务。
+ * 按 idx_task_finish 每次取 chunkSize 个 id，每块一个短事务，不长时间持有行锁。
+ */
+@Slf4j
+@Service
+public class RetentionService {
+    private static final String[] TERMINAL = {"SUCCEED", "FAILED"};
+
+    private static final String SELECT_CHUNK =
+            "SELECT id FROM batch_task WHERE status=? AND finish_at < ? ORDER BY finish_at, id";
+    // 事务内先锁住仍处于终态的行，之后三条语句只处理这些 id：取 id 之后被人工重置的任务连同其 batch_run 原样留在热表
+    private static final String LOCK_CHUNK =
+            "SELECT id FROM batch_task WHERE id IN (:ids) AND status IN ('SUCCEED','FAILED') FOR UPDATE";
+    private static final String ARCHIVE_TASKS =
+            "INSERT INTO batch_task_archive(id, ticket_no, type, payload, priority, status, attempts, max_attempts, " +
+                    "owner, created_at, updated_at, finish_at, message) " +
+                    "SELECT id, ticket_no, type, payload, priority, status, attempts, max_attempts, " +
+                    "owner, created_at, updated_at, finish_at, message FROM batch_task WHERE id IN (:ids)";
+    private static final String ARCHIVE_RUNS =
+            "INSERT INTO batch_run_archive(id, task_id, started_at, ended_at, status, message) " +
+                    "SELECT id, task_id, started_at, COALESCE(ended_at, started_at), status, message FROM batch_run WHERE task_id IN (:ids)";
+    private static final String DELETE_RUNS = "DELETE FROM batch_run WHERE task_id IN (:ids)";
+    private static final String DELETE_TASKS = "DELETE FROM batch_task WHERE id IN (:ids)";
+
+    private final JdbcTemplate chunkQuery;
+    private final NamedParameterJdbcTemplate named;
+    private final TransactionTemplate tx;
+    private final SchedulerProperties props;
+
+    private Boolean archiveReady;
+
+    public RetentionService(DataSource dataSource, PlatformTransactionManager txManager, SchedulerProperties props) {
+        this.props = props;
+        this.chunkQuery = new JdbcTemplate(dataSource);
+        this.chunkQuery.setMaxRows(Math.max(1, props.getRetention().getChunkSize()));
+        this.named = new NamedParameterJdbcTemplate(dataSource);
+        this.tx = new TransactionTemplate(txManager);
+        this.tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Scheduled(fixedDelayString = "#{@schedulerProperties.retention.interval.toMillis()}",
+            initialDelayString = "#{@schedulerProperties.retention.interval.toMillis()}")
+    public void sweep() {
+        SchedulerProperties.Retention cfg = props.getRetention();
+        if (!cfg.isEnabled()) return;
+        boolean archive = cfg.getMode() == SchedulerProperties.RetentionMode.ARCHIVE;
+        if (archive && !archiveTablesExist()) return;
+
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - cfg.getMaxAge().toMillis());
+        int chunks = 0;
+        int moved = 0;
+        try {
+            for (String status : TERMINAL) {
+                while (chunks < cfg.getMaxChunksPerRun()) {
+                    List<Long> ids = chunkQuery.queryForList(SELECT_CHUNK, Long.class, status, cutoff);
+                    if (ids.isEmpty()) break;
+                    moved += moveChunk(ids, archive);
+                    chunks++;
+                    if (ids.size() < cfg.getChunkSize()) break;
+                }
+            }
+        } catch (DataAccessException e) {
+            // 多节点同时清理时可能撞上归档主键，本块已回滚，下一轮再处理
+            log.warn("Retention sweep stopped after {} chunks", chunks, e);
+        }
+        if (moved > 0) {
+            log.info("Retention {} {} terminal tasks finished before {} in {} chunks",
+                    archive ? "archived" : "purged", moved, cutoff, chunks);
+        }
+    }
+
+    private int moveChunk(List<Long> ids, boolean archive) {
+        Integer n = tx.execute(s -> {
+            List<Long> locked = named.queryForList(LOCK_CHUNK, new MapSqlParameterSource("ids", ids), Long.class);
+            if (locked.isEmpty()) return 0;
+            MapSqlParameterSource p = new MapSqlParameterSource("ids", locked);
+            if (archive) {
+                named.update(ARCHIVE_RUNS, p);
+                named.update(ARCHIVE_TASKS, p);
+            }
+            named.update(DELETE_RUNS, p);
+            return named.update(DELETE_TASKS, p);
+        });
+        return n == null ? 0 : n;
+    }
+
+    /**
+     * 归档表由 db/&lt;dialect&gt;/retention.sql 创建（带分区，不交给 ddl-auto），缺表时不做任何删除
+     */
+    private boolean archiveTablesExist() {
+        if (archiveReady == null) {
+            try {
+                chunkQuery.queryForList("SELECT id FROM batch_task_archive WHERE 1=0");
+                chunkQuery.queryForList("SELECT id FROM batch_run_archive WHERE 1=0");
+                archiveReady = true;
+            } catch (DataAccessException e) {
+                log.error("Retention mode ARCHIVE needs batch_task_archive/batch_run_archive, " +
+                        "run db/<dialect>/retention.sql first; retention is skipped");
+                archiveReady = false;
+            }
+        }
+        return archiveReady;
+    }
+}
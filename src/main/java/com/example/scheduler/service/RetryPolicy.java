@@ -0,0 +1,42 @@
+package com.example.scheduler.service;
+
+import com.example.scheduler.config.SchedulerProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 失败重试策略：delay = min(maxDelay, baseDelay * 2^(n-1)) + random(0, delay * jitter)。
+ * 抖动把同一时刻失败的一批任务（如下游故障）打散，避免恢复后同时涌向 picker。
+ */
+@Component
+@RequiredArgsConstructor
+public class RetryPolicy {
+    private final SchedulerProperties props;
+
+    /**
+     * 任务允许的最大执行次数；行上的 max_attempts 优先，其次按类型配置
+     */
+    public int maxAttempts(String type, Integer rowMaxAttempts) {
+        if (rowMaxAttempts != null && rowMaxAttempts > 0) return rowMaxAttempts;
+        return Math.max(1, cfg(type).getMaxAttempts());
+    }
+
+    /**
+     * 第 attempt 次失败后，距下次执行的等待毫秒数
+     */
+    public long backoffMillis(String type, int attempt) {
+        SchedulerProperties.Retry c = cfg(type);
+        long base = Math.max(0L, c.getBaseDelay().toMillis());
+        long max = Math.max(base, c.getMaxDelay().toMillis());
+        int shift = Math.min(Math.max(0, attempt - 1), 30);
+        long delay = base > (max >> shift) ? max : Math.min(max, base << shift);
+        long jitterBound = (long) (delay * Math.max(0d, c.getJitter()));
+        return jitterBound > 0 ? delay + ThreadLocalRandom.current().nextLong(jitterBound) : delay;
+    }
+
+    private SchedulerProperties.Retry cfg(String type) {
+        return props.getRetry().policyFor(type);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.scheduler.service;
+
+import com.example.scheduler.config.SchedulerProperties;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个 Runner 类型的隔离舱：独立的执行器、在途上限与等待队列，
+ * 慢类型（如 code.index）占满自己的额度也不会拖住其他类型。
+ */
+@Slf4j
+class RunnerBulkhead {
+    @Getter
+    private final String type;
+    /**
+     * 在途上限 = 并发数 + 队列长度（已领取但尚未开始的任务也计入）
+     */
+    private final int capacity;
+    private final ExecutorService executor;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * 在途数从满降到有空闲时调用一次（唤醒等待额度的 poller）；未满时的完成不通知
+     */
+    private final Runnable onFreed;
+
+    RunnerBulkhead(String type, SchedulerProperties.Bulkhead cfg, Runnable onFreed) {
+        this.type = type;
+        this.onFreed = onFreed;
+        int concurrency = Math.max(1, cfg.getMaxConcurrency());
+        int queue = Math.max(0, cfg.getQueueCapacity());
+        this.capacity = concurrency + queue;
+        SchedulerProperties.ThreadMode mode = cfg.getThreadMode();
+        ThreadFactory threads = mode == SchedulerProperties.ThreadMode.VIRTUAL ? virtualThreads(type) : null;
+        if (threads == null) {
+            mode = SchedulerProperties.ThreadMode.PLATFORM;
+            threads = platformThreads(type);
+        }
+        this.executor = newExecutor(concurrency, capacity, threads);
+        log.info("Bulkhead ready: type={}, maxConcurrency={}, queue={}, threads={}", type, concurrency, queue, mode);
+    }
+
+    /**
+     * 当前还能领取多少条
+     */
+    int free() {
+        return capacity - inFlight.get();
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    void submit(Runnable job) {
+        inFlight.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    job.run();
+                } finally {
+                    if (inFlight.getAndDecrement() == capacity) onFreed.run();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            throw e;
+        }
+    }
+
+    boolean shutdown(long waitSeconds) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(waitSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 执行器队列按整个在途上限开：任务在 finally 里先释放额度，工作线程随后才去取下一条，
+     * 这段间隙里按 free() 补领的任务不能因队列已满被拒绝。
+     * 虚拟线程同样由固定 concurrency 个工作线程执行，maxConcurrency 在两种模式下都生效
+     */
+    private static ExecutorService newExecutor(int concurrency, int queue, ThreadFactory threads) {
+        return new ThreadPoolExecutor(concurrency, concurrency, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queue), threads);
+    }
+
+    private static ThreadFactory platformThreads(String type) {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "task-" + type + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * 编译目标为 Java 11，运行在 21+ 时才有虚拟线程，反射调用 Thread.ofVirtual().name(prefix, 1).factory()
+     *
+     * @return 不支持虚拟线程时返回 null
+     */
+    private static ThreadFactory virtualThreads(String type) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> api = Class.forName("java.lang.Thread$Builder");
+            builder = api.getMethod("name", String.class, long.class).invoke(builder, "task-" + type + "-", 1L);
+            return (ThreadFactory) api.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads not available on this JVM, type={} falls back to platform threads", type);
+            return null;
+        }
+    }
+}
@@ -1,67 +1,411 @@
 package com.example.scheduler.service;
 
+import com.example.scheduler.config.SchedulerProperties;
 import com.example.scheduler.domain.BatchSchedule;
+import com.example.scheduler.domain.MisfirePolicy;
+import com.example.scheduler.jfr.ScheduleFireEvent;
+import com.example.scheduler.metrics.EngineMetrics;
 import com.example.scheduler.repo.ScheduleRepo;
-import com.example.scheduler.repo.TaskRepo;
-import lombok.RequiredArgsConstructor;
+import com.example.scheduler.repo.TicketWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.support.CronExpression;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 
 import java.sql.Timestamp;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Cron 触发：内存里按下次触发时间维护一个最小堆，规则的 CronExpression 只在装载时解析一次。
+ * 每个 tick 只看堆顶，只有到期的规则才会展开触发时间并写入任务，空闲 tick 不查库、不分配。
+ * 规则按 updated_at 每 refresh-interval 增量刷新，页面保存后经 invalidate 在下个 tick 生效；
+ * resync-interval 全量重读只用于兜底直接删行等不维护 updated_at 的外部修改。
+ * 集群中只装载 ClusterCoordinator 分给本节点的规则（LEADER 模式下非 leader 不触发），职责变化时立即重读。
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class ScheduleFireService {
     private final ScheduleRepo scheduleRepo;
-    private final TaskRepo taskRepo;
-    private final long windowSeconds = 3600;
+    private final TicketWriter ticketWriter;
+    private final TaskSignal taskSignal;
+    private final ClusterCoordinator cluster;
+    private final EngineMetrics metrics;
+    private final SchedulerProperties props;
+    private final TransactionTemplate tx;
+    private static final int MAX_FIRES_PER_PASS = 5000;
+    /**
+     * 增量查询回看的重叠时间，覆盖 updated_at 取值到事务提交之间的延迟；重复读到的行按定义比较后忽略
+     */
+    private static final long REFRESH_OVERLAP_MS = 5000L;
 
-    @Scheduled(fixedDelay = 10000L, initialDelay = 5000L)
-    @Transactional
-    public void fireDue() {
-        ZoneId zone = ZoneId.systemDefault();
-        ZonedDateTime now = ZonedDateTime.now(zone).withNano(0);
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final PriorityQueue<Entry> timers = new PriorityQueue<>(Comparator.comparingLong((Entry e) -> e.nextFireMs));
+    private long lastSyncMs;
+    private long lastRefreshMs;
+    private Timestamp refreshedUpTo;
+    /**
+     * 页面保存过、待下个 tick 重读的规则 id
+     */
+    private final Set<Long> invalidated = ConcurrentHashMap.newKeySet();
+    private long seenEpoch = -1;
+    /**
+     * 当前 tick 剩余的补发额度
+     */
+    private int backfillBudget;
+
+    public ScheduleFireService(ScheduleRepo scheduleRepo, TicketWriter ticketWriter, TaskSignal taskSignal,
+                               ClusterCoordinator cluster, EngineMetrics metrics, SchedulerProperties props, PlatformTransactionManager txManager) {
+        this.scheduleRepo = scheduleRepo;
+        this.ticketWriter = ticketWriter;
+        this.taskSignal = taskSignal;
+        this.cluster = cluster;
+        this.metrics = metrics;
+        this.props = props;
+        this.tx = new TransactionTemplate(txManager);
+    }
 
-        List<BatchSchedule> enabled = scheduleRepo.findByEnabled(1);
-        for (BatchSchedule s : enabled) {
-            if (!StringUtils.hasText(s.getCron())) continue;
-            CronExpression cron;
+    @Scheduled(fixedDelayString = "#{@schedulerProperties.cron.tick.toMillis()}", initialDelay = 5000L)
+    public synchronized void fireDue() {
+        if (!cluster.isActive()) return;
+        long nowMs = System.currentTimeMillis();
+        long epoch = cluster.epoch();
+        if (epoch != seenEpoch) {
+            // 刚成为 leader 或分片成员变化：last_fire_at 可能已被其他节点推进，立即重读
+            seenEpoch = epoch;
+            lastSyncMs = 0;
+        }
+        if (lastSyncMs == 0 || nowMs - lastSyncMs >= props.getCron().getResyncInterval().toMillis()) {
+            resync(nowMs);
+        } else if (nowMs - lastRefreshMs >= props.getCron().getRefreshInterval().toMillis()) {
+            refresh(nowMs);
+        }
+        if (!invalidated.isEmpty()) reloadInvalidated();
+        backfillBudget = props.getCron().getMaxBackfillPerTick();
+        ZonedDateTime now = null;
+        while (!timers.isEmpty() && timers.peek().nextFireMs <= nowMs) {
+            Entry e = timers.poll();
+            if (e.removed) continue;
+            if (now == null) now = ZonedDateTime.now(zone).withNano(0);
             try {
-                cron = CronExpression.parse(s.getCron());
-            } catch (Exception e) {
-                log.warn("Invalid cron id={}, cron={}", s.getId(), s.getCron());
+                fire(e, now);
+            } catch (RuntimeException ex) {
+                // 本条回滚，下个 tick 重试，不影响其他规则
+                log.warn("Fire failed for schedule id={}, retry next tick", e.id, ex);
+                e.nextFireMs = nowMs + props.getCron().getTick().toMillis();
+                timers.add(e);
+                continue;
+            }
+            ZonedDateTime next = e.cron.next(e.lastFireAt);
+            if (next == null) {
+                entries.remove(e.id);
                 continue;
             }
+            // 单次展开有上限，没追平的部分留到下个 tick 继续
+            e.nextFireMs = Math.max(next.toInstant().toEpochMilli(), nowMs + 1);
+            timers.add(e);
+        }
+    }
 
-            ZonedDateTime last = s.getLastFireAt() == null ? now.minusSeconds(windowSeconds) : s.getLastFireAt().toInstant().atZone(zone);
-            ZonedDateTime start = last;
-            ZonedDateTime end = now;
+    /**
+     * 按 misfire 策略取 (lastFireAt, now] 内要触发的时间，多行批量写入（ticket_no 保证幂等），
+     * 再把 last_fire_at 一次推进到最后一个触发时间；一个规则一个事务
+     */
+    private void fire(Entry e, ZonedDateTime now) {
+        ScheduleFireEvent ev = new ScheduleFireEvent();
+        ev.begin();
+        List<ZonedDateTime> toFire = plan(e, now);
+        if (toFire == null) {
+            // 本 tick 补发额度不够，整条规则顺延，last_fire_at 不动
+            commitFireEvent(ev, e.id, e.type, e.cronText, "DEFERRED", 0, 0, null);
+            return;
+        }
 
-            List<ZonedDateTime> toFire = new ArrayList<>();
-            ZonedDateTime next = cron.next(start.minusSeconds(1));
-            while (next != null && !next.isAfter(end)) {
-                toFire.add(next);
-                next = cron.next(next);
-                if (toFire.size() > 5000) break;
-            }
+        List<TicketWriter.Ticket> tickets = new ArrayList<>(toFire.size());
+        for (ZonedDateTime t : toFire) {
+            String ticket = "schedule#" + e.id + "#" + t.toLocalDateTime().toString().replace(":", "").replace("-", "");
+            tickets.add(new TicketWriter.Ticket(ticket, Timestamp.from(t.toInstant())));
+        }
+        ZonedDateTime last = toFire.isEmpty() ? null : toFire.get(toFire.size() - 1);
 
-            for (ZonedDateTime t : toFire) {
-                String ticket = "schedule#" + s.getId() + "#" + t.toLocalDateTime().toString().replace(":", "").replace("-", "");
-                int inserted = taskRepo.insertIfNotExists(ticket, s.getType(), s.getPayload(), 0, "PENDING", 0, 3, Timestamp.from(t.toInstant()));
-                if (inserted > 0) {
-                    log.info("Backfill/Fired schedule id={}, cron={}, at={}", s.getId(), s.getCron(), t);
-                    scheduleRepo.updateLastFireAt(s.getId(), Timestamp.from(t.toInstant()));
+        int fired = 0;
+        if (last != null) {
+            // 行上的 max_attempts 优先于类型配置，写入时取该类型的配置值，按类型的重试策略才对定时任务生效
+            int maxAttempts = props.getRetry().policyFor(e.type).getMaxAttempts();
+            Integer inserted = tx.execute(st -> {
+                int n = ticketWriter.insert(e.type, e.payload, maxAttempts, tickets);
+                scheduleRepo.advanceLastFireAt(e.id, Timestamp.from(last.toInstant()));
+                if (n > 0) taskSignal.signalAfterCommit();
+                return n;
+            });
+            fired = inserted == null ? 0 : inserted;
+            e.lastFireAt = last;
+        }
+        // SKIP / FIRE_ONCE / FIRE_LAST_N 跳过的区间不再重复计算（库里的 last_fire_at 仍是最后一次真实触发）
+        if (e.skippedUntil != null && e.skippedUntil.isAfter(e.lastFireAt)) e.lastFireAt = e.skippedUntil;
+        e.skippedUntil = null;
+        if (fired > 0) {
+            log.info("Fired schedule id={}, cron={}, due={}, inserted={}, last={}", e.id, e.cronText, toFire.size(), fired, last);
+            metrics.cronFired(System.currentTimeMillis() - last.toInstant().toEpochMilli());
+            metrics.cronBackfill(fired);
+        }
+        commitFireEvent(ev, e.id, e.type, e.cronText, fired > 0 ? "FIRED" : (toFire.isEmpty() ? "SKIPPED" : "DUPLICATE"),
+                toFire.size(), fired, toFire.isEmpty() ? null : toFire.get(0));
+    }
+
+    /**
+     * 计算本次要触发的时间：早于 now - misfireThreshold 的算错过，按规则的策略取舍并占用本 tick 的补发额度，
+     * 之后的正常展开到 now。返回 null 表示额度不够、本规则顺延到下个 tick。
+     */
+    private List<ZonedDateTime> plan(Entry e, ZonedDateTime now) {
+        SchedulerProperties.Cron cfg = props.getCron();
+        ZonedDateTime lateBefore = now.minus(cfg.getMisfireThreshold());
+        List<ZonedDateTime> out = new ArrayList<>();
+        ZonedDateTime from = e.lastFireAt;
+        ZonedDateTime first = e.cron.next(from);
+        if (first == null) return out;
+
+        if (first.isBefore(lateBefore)) {
+            // 本 tick 还没有规则用过额度时，额度不够也至少补一部分，避免 N 大于额度时永远顺延
+            boolean untouched = backfillBudget == cfg.getMaxBackfillPerTick();
+            switch (e.misfirePolicy) {
+                case SKIP:
+                    from = lateBefore;
+                    break;
+                case FIRE_ONCE:
+                    if (backfillBudget < 1) return null;
+                    out.add(first);
+                    backfillBudget--;
+                    from = lateBefore;
+                    break;
+                case FIRE_LAST_N: {
+                    int n = Math.max(1, e.misfireLastN);
+                    ArrayDeque<ZonedDateTime> lastN = new ArrayDeque<>(n + 1);
+                    for (ZonedDateTime t = first; t != null && t.isBefore(lateBefore); t = e.cron.next(t)) {
+                        lastN.addLast(t);
+                        if (lastN.size() > n) lastN.pollFirst();
+                    }
+                    if (lastN.size() > backfillBudget && !untouched) return null;
+                    while (lastN.size() > Math.max(0, backfillBudget)) lastN.pollFirst();
+                    backfillBudget -= lastN.size();
+                    out.addAll(lastN);
+                    from = lateBefore;
+                    break;
+                }
+                default: {
+                    // FIRE_ALL：按时间顺序补，额度用完就停在这里，剩下的下个 tick 接着补
+                    ZonedDateTime t = first;
+                    while (t != null && t.isBefore(lateBefore) && out.size() < MAX_FIRES_PER_PASS) {
+                        if (backfillBudget <= 0) return out.isEmpty() ? null : out;
+                        out.add(t);
+                        backfillBudget--;
+                        t = e.cron.next(t);
+                    }
+                    if (t != null && t.isBefore(lateBefore)) return out;
+                    from = out.isEmpty() ? e.lastFireAt : out.get(out.size() - 1);
                 }
             }
+            if (e.misfirePolicy != MisfirePolicy.FIRE_ALL) {
+                log.info("Misfire of schedule id={} handled by {}, backfilling {} of the missed fire times",
+                        e.id, e.misfirePolicy, out.size());
+                // 错过区间已处理完，之后从 lateBefore 往后算，不再逐个重复判断
+                e.skippedUntil = lateBefore;
+            }
+        }
+
+        for (ZonedDateTime t = e.cron.next(from); t != null && !t.isAfter(now) && out.size() < MAX_FIRES_PER_PASS; t = e.cron.next(t)) {
+            out.add(t);
+        }
+        return out;
+    }
+
+    /**
+     * 规则已保存，下个 tick 单独重读；只入队不查库，不阻塞调用方
+     */
+    public void invalidate(Long scheduleId) {
+        if (scheduleId != null) invalidated.add(scheduleId);
+    }
+
+    /**
+     * 全量重读启用的规则，并以此为增量刷新的起点
+     */
+    private void resync(long nowMs) {
+        lastSyncMs = nowMs;
+        lastRefreshMs = nowMs;
+        Timestamp startedAt = new Timestamp(nowMs);
+        invalidated.clear();
+        ZonedDateTime now = ZonedDateTime.now(zone).withNano(0);
+        Set<Long> seen = new HashSet<>();
+        for (BatchSchedule s : scheduleRepo.findByEnabled(1)) {
+            apply(s, now);
+            seen.add(s.getId());
+        }
+        entries.values().removeIf(e -> {
+            if (seen.contains(e.id)) return false;
+            e.removed = true;
+            return true;
+        });
+        refreshedUpTo = startedAt;
+        // 清掉被替换/停用的条目，避免堆里堆积
+        timers.removeIf(e -> e.removed);
+    }
+
+    /**
+     * 只读 updated_at 在上次刷新之后的规则
+     */
+    private void refresh(long nowMs) {
+        lastRefreshMs = nowMs;
+        Timestamp startedAt = new Timestamp(nowMs);
+        List<BatchSchedule> changed = scheduleRepo.findByUpdatedAtGreaterThanEqual(
+                new Timestamp(refreshedUpTo.getTime() - REFRESH_OVERLAP_MS));
+        refreshedUpTo = startedAt;
+        if (changed.isEmpty()) return;
+        ZonedDateTime now = ZonedDateTime.now(zone).withNano(0);
+        for (BatchSchedule s : changed) apply(s, now);
+        timers.removeIf(e -> e.removed);
+    }
+
+    private void reloadInvalidated() {
+        ZonedDateTime now = ZonedDateTime.now(zone).withNano(0);
+        for (Iterator<Long> it = invalidated.iterator(); it.hasNext(); ) {
+            Long id = it.next();
+            it.remove();
+            Optional<BatchSchedule> s = scheduleRepo.findById(id);
+            if (s.isPresent()) {
+                apply(s.get(), now);
+            } else {
+                Entry old = entries.remove(id);
+                if (old != null) old.removed = true;
+            }
+        }
+        timers.removeIf(e -> e.removed);
+    }
+
+    /**
+     * 按一行最新定义更新缓存：未变化的保留堆中位置，只同步 last_fire_at；
+     * 新增或 cron/type/payload/misfire 变化的重新装载入堆；停用或不归本节点的出堆
+     */
+    private void apply(BatchSchedule s, ZonedDateTime now) {
+        Entry old = entries.get(s.getId());
+        boolean wanted = Integer.valueOf(1).equals(s.getEnabled()) && StringUtils.hasText(s.getCron())
+                && cluster.owns(s.getId());
+        if (!wanted) {
+            if (old != null) {
+                old.removed = true;
+                entries.remove(s.getId());
+            }
+            return;
+        }
+        if (old != null && old.sameDefinition(s, props.getCron().getDefaultMisfirePolicy())) {
+            // 其他节点可能已推进 last_fire_at，取较新的一个
+            if (s.getLastFireAt() != null) {
+                ZonedDateTime dbLast = s.getLastFireAt().toInstant().atZone(zone);
+                if (dbLast.isAfter(old.lastFireAt)) old.lastFireAt = dbLast;
+            }
+            return;
+        }
+        Entry e = load(s, now, old);
+        if (old != null) old.removed = true;
+        if (e == null) {
+            entries.remove(s.getId());
+            return;
+        }
+        entries.put(s.getId(), e);
+        timers.add(e);
+    }
+
+    private Entry load(BatchSchedule s, ZonedDateTime now, Entry old) {
+        ScheduleFireEvent ev = new ScheduleFireEvent();
+        ev.begin();
+        CronExpression cron;
+        try {
+            // 只改了 payload/misfire 等时沿用已解析的表达式
+            cron = old != null && old.cronText.equals(s.getCron()) ? old.cron : CronExpression.parse(s.getCron());
+        } catch (Exception ex) {
+            log.warn("Invalid cron id={}, cron={}", s.getId(), s.getCron());
+            commitFireEvent(ev, s.getId(), s.getType(), s.getCron(), "INVALID_CRON", 0, 0, null);
+            return null;
+        }
+        Entry e = new Entry(s, cron, props.getCron().getDefaultMisfirePolicy());
+        // 从未触发过的规则回补最近 backfillWindow 内的触发时间（同样受 misfire 策略约束）
+        e.lastFireAt = s.getLastFireAt() == null
+                ? now.minus(props.getCron().getBackfillWindow()).minusSeconds(1)
+                : s.getLastFireAt().toInstant().atZone(zone);
+        // 修改定义不回退已处理过的区间（含按 misfire 策略跳过、库里没记的部分）
+        if (old != null && old.lastFireAt.isAfter(e.lastFireAt)) e.lastFireAt = old.lastFireAt;
+        ZonedDateTime next = cron.next(e.lastFireAt);
+        if (next == null) return null;
+        e.nextFireMs = next.toInstant().toEpochMilli();
+        return e;
+    }
+
+    private static void commitFireEvent(ScheduleFireEvent ev, Long id, String type, String cron, String decision, int due, int inserted, ZonedDateTime first) {
+        ev.end();
+        if (!ev.shouldCommit()) return;
+        ev.scheduleId = id;
+        ev.type = type;
+        ev.cron = cron;
+        ev.decision = decision;
+        ev.due = due;
+        ev.inserted = inserted;
+        ev.firstFireTime = first == null ? 0L : first.toInstant().toEpochMilli();
+        ev.commit();
+    }
+
+    /**
+     * 堆中的一个规则：解析好的 cron + 上次触发时间 + 下次触发时间
+     */
+    private static class Entry {
+        final Long id;
+        final String type;
+        final String payload;
+        final String cronText;
+        final CronExpression cron;
+        final MisfirePolicy misfirePolicy;
+        final int misfireLastN;
+        ZonedDateTime lastFireAt;
+        /**
+         * 按 misfire 策略跳过的错过区间终点，本次触发后并入 lastFireAt
+         */
+        ZonedDateTime skippedUntil;
+        long nextFireMs;
+        /**
+         * 已被替换或停用；堆里的旧条目出堆时跳过
+         */
+        boolean removed;
+
+        Entry(BatchSchedule s, CronExpression cron, MisfirePolicy defaultPolicy) {
+            this.id = s.getId();
+            this.type = s.getType();
+            this.payload = s.getPayload();
+            this.cronText = s.getCron();
+            this.cron = cron;
+            this.misfirePolicy = s.getMisfirePolicy() == null ? defaultPolicy : s.getMisfirePolicy();
+            this.misfireLastN = s.getMisfireLastN() == null ? 1 : s.getMisfireLastN();
+        }
+
+        boolean sameDefinition(BatchSchedule s, MisfirePolicy defaultPolicy) {
+            return Objects.equals(cronText, s.getCron()) && Objects.equals(type, s.getType())
+                    && Objects.equals(payload, s.getPayload())
+                    && misfirePolicy == (s.getMisfirePolicy() == null ? defaultPolicy : s.getMisfirePolicy())
+                    && misfireLastN == (s.getMisfireLastN() == null ? 1 : s.getMisfireLastN());
         }
     }
-}
\ No newline at end of file
+}
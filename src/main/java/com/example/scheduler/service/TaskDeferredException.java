@@ -0,0 +1,22 @@
+package com.example.scheduler.service;
+
+import java.time.Duration;
+
+/**
+ * Runner 抛出表示“条件未满足，稍后再执行”（如合并任务等待子任务完成）：
+ * 任务回到 PENDING，delay 之后再被领取，不计入执行次数，也不按失败重试退避
+ */
+public class TaskDeferredException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final Duration delay;
+
+    public TaskDeferredException(String message, Duration delay) {
+        super(message);
+        this.delay = delay;
+    }
+
+    public Duration getDelay() {
+        return delay;
+    }
+}
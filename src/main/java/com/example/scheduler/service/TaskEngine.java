@@ -1,24 +1,25 @@
 package com.example.scheduler.service;
 
-import com.example.scheduler.domain.BatchRun;
-import com.example.scheduler.domain.BatchTask;
+import com.example.scheduler.config.SchedulerProperties;
+import com.example.scheduler.jfr.TaskClaimEvent;
+import com.example.scheduler.jfr.TaskCompleteEvent;
+import com.example.scheduler.jfr.TaskRunEvent;
+import com.example.scheduler.metrics.EngineMetrics;
+import com.example.scheduler.repo.ClaimedTask;
 import com.example.scheduler.repo.TaskPicker;
-import com.example.scheduler.repo.TaskRepo;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
+import javax.annotation.PreDestroy;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
@@ -26,17 +27,28 @@ import java.util.concurrent.ConcurrentHashMap;
 @RequiredArgsConstructor
 public class TaskEngine {
 
-    private final TaskRepo taskRepo;
     private final TaskPicker picker;
-
-    @PersistenceContext
-    private EntityManager em; // 不要 final，便于容器注入
+    private final CompletionBuffer completions;
+    private final SchedulerProperties props;
+    private final TaskSignal signal;
+    private final NodeIdentity node;
+    private final RetryPolicy retryPolicy;
+    private final EngineMetrics metrics;
 
     private final ObjectMapper mapper; // 由 Spring 注入，便于统一配置
 
     private final List<TaskRunner> autoRunners;
     private final Map<String, TaskRunner> runners = new ConcurrentHashMap<>();
 
+    /**
+     * 每个 Runner 类型一个隔离舱
+     */
+    private final Map<String, RunnerBulkhead> bulkheads = new ConcurrentHashMap<>();
+    /**
+     * 本节点持有租约的任务（领取后加入，结果交给 CompletionBuffer 后移除），供 LeaseKeeper 续期
+     */
+    private final Set<Long> held = ConcurrentHashMap.newKeySet();
+
     /**
      * 供外部（Registrar）或测试注册 Runner
      */
@@ -47,6 +59,13 @@ public class TaskEngine {
             throw new IllegalArgumentException("TaskRunner.type() must not be empty");
         }
         runners.put(key, r);
+        bulkheads.computeIfAbsent(key, k -> {
+            RunnerBulkhead b = new RunnerBulkhead(k, props.getEngine().bulkheadFor(k), signal::signalCapacity);
+            metrics.forType(k);
+            metrics.gauge("scheduler.bulkhead.in.flight", "Tasks claimed by this node and not yet completed",
+                    b, RunnerBulkhead::inFlight, "type", k);
+            return b;
+        });
         log.info("Runner registered: {}", key);
     }
 
@@ -59,47 +78,104 @@ public class TaskEngine {
         log.info("All runners: {}", runners.keySet());
     }
 
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (RunnerBulkhead b : bulkheads.values()) {
+            if (!b.shutdown(props.getEngine().getShutdownWaitSeconds())) {
+                log.warn("Runner still busy on shutdown, type={}, inFlight={}", b.getType(), b.inFlight());
+            }
+        }
+    }
+
     /**
-     * A. 原子领取（短事务 / 新事务）
+     * A. 原子领取：由 picker 按方言一条（DB2）或两条（MySQL）自动提交语句完成，返回轻量投影
      */
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    protected Optional<BatchTask> claimOne() {
-        Optional<Long> idOpt = picker.lockOnePendingId();
-        if (!idOpt.isPresent()) return Optional.empty();
-        Long id = idOpt.get();
-        int ok = picker.markRunning(id, owner());
-        if (ok == 0) {
-            // 被其他实例抢走
-            return Optional.empty();
+    protected List<ClaimedTask> claimBatch(String type, int limit) {
+        TaskClaimEvent ev = new TaskClaimEvent();
+        ev.begin();
+        long t0 = System.nanoTime();
+        List<ClaimedTask> tasks = picker.claim(type, limit, node.id());
+        metrics.forType(type).claim(tasks.size(), System.nanoTime() - t0);
+        ev.end();
+        if (ev.shouldCommit()) {
+            ev.type = type;
+            ev.limit = limit;
+            ev.claimed = tasks.size();
+            ev.owner = node.id();
+            ev.commit();
         }
-        BatchTask task = em.find(BatchTask.class, id);
-        return Optional.ofNullable(task);
+        return tasks;
     }
 
     /**
-     * B. 对外入口：领取 → 执行业务（无事务）→ 完成回写（新事务）
+     * B. 对外入口：只为还有空闲额度的类型领取 → 交给各自的隔离舱执行 → 各自完成回写
+     *
+     * @return 本次领取到的任务数
      */
-    public void pollAndRunOnce() {
-        Optional<BatchTask> opt = claimOne();
-        if (!opt.isPresent()) return;
+    public int pollAndRun() {
+        int total = 0;
+        for (RunnerBulkhead b : bulkheads.values()) {
+            int limit = Math.min(b.free(), props.getEngine().getClaimBatchSize());
+            if (limit <= 0) continue;
+
+            List<ClaimedTask> tasks = claimBatch(b.getType(), limit);
+            for (ClaimedTask task : tasks) {
+                held.add(task.getId());
+                b.submit(() -> {
+                    try {
+                        execute(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        log.warn("Interrupted before completion of task id={} was buffered", task.getId());
+                    } finally {
+                        held.remove(task.getId());
+                    }
+                });
+            }
+            total += tasks.size();
+        }
+        return total;
+    }
 
-        BatchTask task = opt.get();
+    public Set<Long> heldTaskIds() {
+        return Collections.unmodifiableSet(held);
+    }
 
-        // 新建 run 记录（短事务写入 started_at 与 RUNNING）
-        BatchRun run = createRun(task.getId());
+    /**
+     * 是否还有任一类型可以继续领取
+     */
+    public boolean hasFreeCapacity() {
+        for (RunnerBulkhead b : bulkheads.values()) {
+            if (b.free() > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * C. 单个任务：执行业务（无事务）→ 计算结果与重试 → 交给 CompletionBuffer 批量回写
+     */
+    protected void execute(ClaimedTask task) throws InterruptedException {
+        Timestamp startedAt = tsNow();
 
         // —— 执行业务（不在事务里）——
         boolean succeed = false;
         String errMsg = null;
-        Timestamp finish = tsNow();
+        Timestamp deferUntil = null;
+        long t0 = System.nanoTime();
+        TaskRunEvent runEvent = new TaskRunEvent();
+        runEvent.begin();
 
         try {
             TaskRunner r = runners.get(task.getType());
             if (r == null) throw new IllegalStateException("No runner for type=" + task.getType());
 
             String payload = safePayload(task.getPayload());
-            r.run(mapper.readTree(payload));
+            r.run(task, mapper.readTree(payload));
             succeed = true;
+        } catch (TaskDeferredException e) {
+            log.debug("Task deferred id={}: {}", task.getId(), e.getMessage());
+            errMsg = e.getMessage();
+            deferUntil = new Timestamp(System.currentTimeMillis() + e.getDelay().toMillis());
         } catch (Exception e) {
             log.error("Task failed id={}", task.getId(), e);
             errMsg = e.getMessage();
@@ -108,58 +184,39 @@ public class TaskEngine {
             }
         }
 
-        // —— 回写（短事务 / 新事务）——
-        complete(task.getId(), run.getId(), succeed, errMsg, finish);
-    }
-
-    /**
-     * 新建 run 记录（短事务）
-     */
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    protected BatchRun createRun(Long taskId) {
-        BatchRun run = new BatchRun();
-        run.setTaskId(taskId);
-        run.setStatus("RUNNING");
-        run.setStartedAt(tsNow());
-        em.persist(run);
-        return run;
-    }
-
-    /**
-     * 完成回写（短事务）
-     */
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    protected void complete(Long taskId, Long runId, boolean succeed, String message, Timestamp finishAt) {
-        BatchTask task = em.find(BatchTask.class, taskId);
-        if (task == null) {
-            log.warn("Task not found when completing, id={}", taskId);
-            return;
+        // —— 回写：成功 → SUCCEED；推迟 → 回到 PENDING 且不计次数；失败且次数未用尽 → 带退避回到 PENDING；否则 FAILED ——
+        long runNanos = System.nanoTime() - t0;
+        runEvent.end();
+        Timestamp finishAt = tsNow();
+        int attempts = (task.getAttempts() == null ? 0 : task.getAttempts()) + (deferUntil != null ? 0 : 1);
+        int maxAttempts = retryPolicy.maxAttempts(task.getType(), task.getMaxAttempts());
+        Timestamp retryAt = deferUntil;
+        if (!succeed && retryAt == null && attempts < maxAttempts) {
+            long delay = retryPolicy.backoffMillis(task.getType(), attempts);
+            retryAt = new Timestamp(finishAt.getTime() + delay);
+            log.info("Task retry scheduled id={}, attempt={}/{}, in {} ms", task.getId(), attempts, maxAttempts, delay);
         }
-        BatchRun run = em.find(BatchRun.class, runId);
-        if (run == null) {
-            run = new BatchRun();
-            run.setTaskId(taskId);
-            run.setStartedAt(tsNow());
+        metrics.forType(task.getType()).run(succeed, retryAt != null, runNanos);
+        String outcome = succeed ? "SUCCEED" : deferUntil != null ? "DEFERRED" : (retryAt != null ? "RETRY" : "FAILED");
+        if (runEvent.shouldCommit()) {
+            runEvent.taskId = task.getId();
+            runEvent.type = task.getType();
+            runEvent.attempt = attempts;
+            runEvent.outcome = outcome;
+            runEvent.commit();
         }
 
-        task.setStatus(succeed ? "SUCCEED" : "FAILED");
-        task.setMessage(message);
-        task.setFinishAt(finishAt);
-        Timestamp now = tsNow();
-        if (task.getCreatedAt() == null) task.setCreatedAt(now);
-        task.setUpdatedAt(now);
-
-        run.setStatus(succeed ? "SUCCEED" : "FAILED");
-        run.setEndedAt(finishAt);
-        run.setMessage(message);
-
-        em.merge(run);
-        taskRepo.save(task);
-    }
-
-    private static String owner() {
-        long pid = ProcessHandle.current().pid();
-        return "local#" + pid;
+        TaskCompleteEvent completeEvent = new TaskCompleteEvent();
+        completeEvent.begin();
+        completions.add(new CompletionBuffer.Completion(task.getId(), node.id(), succeed,
+                succeed ? "SUCCEED" : deferUntil != null ? "DEFERRED" : "FAILED", attempts, errMsg, startedAt, finishAt, retryAt));
+        completeEvent.end();
+        if (completeEvent.shouldCommit()) {
+            completeEvent.taskId = task.getId();
+            completeEvent.type = task.getType();
+            completeEvent.status = outcome;
+            completeEvent.commit();
+        }
     }
 
     private static Timestamp tsNow() {
@@ -169,4 +226,4 @@ public class TaskEngine {
     private static String safePayload(String payload) {
         return (payload == null || payload.trim().isEmpty()) ? "{}" : payload;
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,17 @@
 package com.example.scheduler.service;
 
+import com.example.scheduler.repo.ClaimedTask;
 import com.fasterxml.jackson.databind.JsonNode;
 
 public interface TaskRunner {
     String type();
 
     void run(JsonNode payload) throws Exception;
-}
\ No newline at end of file
+
+    /**
+     * 引擎调用的入口；需要知道所执行任务本身（如以任务 id 生成子任务的幂等 ticket）的 Runner 覆盖此方法
+     */
+    default void run(ClaimedTask task, JsonNode payload) throws Exception {
+        run(payload);
+    }
+}
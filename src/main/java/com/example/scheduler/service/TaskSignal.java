@@ -0,0 +1,87 @@
+package com.example.scheduler.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 本 JVM 内的“有新任务/有空闲额度”通知，用于唤醒 PollScheduler。
+ * 多次通知合并为一次，await 返回后自动复位；两种通知分开记录，poller 据此决定是否重置空队列退避。
+ */
+@Component
+public class TaskSignal {
+    /**
+     * await 的返回原因
+     */
+    enum Wake {
+        TIMEOUT,
+        /**
+         * 某个隔离舱从满变为有空闲额度
+         */
+        CAPACITY,
+        /**
+         * 有新任务入队（同时有空闲额度通知时以此为准）
+         */
+        WORK
+    }
+
+    private final Object lock = new Object();
+    private boolean work;
+    private boolean capacity;
+
+    /**
+     * 有新任务
+     */
+    public void signal() {
+        synchronized (lock) {
+            work = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 隔离舱腾出了额度
+     */
+    void signalCapacity() {
+        synchronized (lock) {
+            capacity = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 在当前事务提交后再通知，避免 poller 先于提交去领取而扑空
+     */
+    public void signalAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            signal();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                signal();
+            }
+        });
+    }
+
+    /**
+     * 等待通知或超时
+     *
+     * @return 唤醒原因
+     */
+    Wake await(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        synchronized (lock) {
+            long remaining = millis;
+            while (!work && !capacity && remaining > 0) {
+                lock.wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            Wake woke = work ? Wake.WORK : capacity ? Wake.CAPACITY : Wake.TIMEOUT;
+            work = false;
+            capacity = false;
+            return woke;
+        }
+    }
+}
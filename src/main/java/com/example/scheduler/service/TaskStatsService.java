@@ -0,0 +1,91 @@
+package com.example.scheduler.service;
+
+import com.example.scheduler.config.SchedulerProperties;
+import com.example.scheduler.metrics.EngineMetrics;
+import com.example.scheduler.repo.TaskCount;
+import com.example.scheduler.repo.TaskRepo;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 队列聚合统计：GROUP BY status/type 的计数 + 最早可执行 PENDING 的等待时长。
+ * 结果缓存 stats-ttl，面板刷新再频繁也只按这个频率查库。
+ */
+@Service
+@RequiredArgsConstructor
+public class TaskStatsService {
+    private final TaskRepo taskRepo;
+    private final SchedulerProperties props;
+    private final EngineMetrics metrics;
+
+    private volatile TaskStats cached;
+
+    /**
+     * 队列深度 / 最早待执行等待时长的 Gauge，抓取时读缓存，不会每次抓取都查库
+     */
+    @PostConstruct
+    public void registerGauges() {
+        for (String status : new String[]{"PENDING", "RUNNING", "SUCCEED", "FAILED"}) {
+            metrics.gauge("scheduler.tasks", "Tasks in batch_task by status", this,
+                    s -> s.stats().getByStatus().getOrDefault(status, 0L), "status", status);
+        }
+        metrics.gauge("scheduler.queue.oldest.pending.seconds", "Wait time of the oldest runnable PENDING task", this,
+                s -> {
+                    Long age = s.stats().getOldestPendingAgeMs();
+                    return age == null ? 0d : age / 1000d;
+                });
+    }
+
+    public TaskStats stats() {
+        TaskStats s = cached;
+        long now = System.currentTimeMillis();
+        if (s != null && now - s.getGeneratedAt() < props.getDashboard().getStatsTtl().toMillis()) {
+            return s;
+        }
+        synchronized (this) {
+            s = cached;
+            if (s != null && now - s.getGeneratedAt() < props.getDashboard().getStatsTtl().toMillis()) {
+                return s;
+            }
+            s = load();
+            cached = s;
+            return s;
+        }
+    }
+
+    private TaskStats load() {
+        long now = System.currentTimeMillis();
+        List<TaskCount> counts = taskRepo.countByStatusAndType();
+        Map<String, Long> byStatus = new TreeMap<>();
+        Map<String, Long> byType = new TreeMap<>();
+        for (TaskCount c : counts) {
+            byStatus.merge(c.getStatus(), c.getCount(), Long::sum);
+            byType.merge(c.getType(), c.getCount(), Long::sum);
+        }
+        Timestamp oldest = taskRepo.oldestRunnablePending(new Timestamp(now));
+        Long oldestAgeMs = oldest == null ? null : Math.max(0L, now - oldest.getTime());
+        return new TaskStats(now, byStatus, byType, counts, oldestAgeMs);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class TaskStats {
+        private final long generatedAt;
+        private final Map<String, Long> byStatus;
+        private final Map<String, Long> byType;
+        private final List<TaskCount> byStatusAndType;
+        /**
+         * 已到期 PENDING 中等待最久的毫秒数，没有则为 null
+         */
+        private final Long oldestPendingAgeMs;
+    }
+}
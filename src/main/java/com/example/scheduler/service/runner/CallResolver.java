@@ -0,0 +1,128 @@
+package com.example.scheduler.service.runner;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
+import com.github.javaparser.resolution.types.ResolvedType;
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 方法调用解析的记忆化：同一次运行内按（作用域的静态类型或所在类型, 方法名, 实参类型）缓存解析出的限定名和签名。
+ * 解析失败的也记下（负缓存），同一个解析不了的调用不再反复走完整查找。
+ * 取不到稳定键的调用（实参含 lambda/方法引用、作用域是类名或类型变量、位于匿名类/局部类中）直接解析，不进缓存。
+ * 作用域和实参的类型由 JavaParserFacade 缓存在节点上，未命中时的完整解析会复用，取键基本不增加开销。
+ * 缓存的只是限定名和签名，各解析线程共享一个实例，取键时用各自 solver 链的 facade。
+ */
+final class CallResolver {
+    private static final Resolved UNRESOLVED = new Resolved("", "");
+
+    private final LruCache<String, Resolved> memo;
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong bypassed = new AtomicLong();
+
+    CallResolver(int maxSize) {
+        this.memo = new LruCache<>("calls", maxSize);
+    }
+
+    /**
+     * @param facade 调用所在 CompilationUnit 的 solver 链对应的 facade
+     * @return 解析结果；解析失败返回 null，调用方降级为局部名与占位签名
+     */
+    Resolved resolve(MethodCallExpr call, JavaParserFacade facade) {
+        String key = keyOf(call, facade);
+        if (key == null) {
+            bypassed.incrementAndGet();
+            return direct(call);
+        }
+        Optional<Resolved> hit = memo.get(key);
+        if (hit.isPresent()) {
+            if (hit.get() == UNRESOLVED) {
+                negativeHits.incrementAndGet();
+                return null;
+            }
+            return hit.get();
+        }
+        Resolved r = direct(call);
+        memo.put(key, r == null ? UNRESOLVED : r);
+        return r;
+    }
+
+    private static Resolved direct(MethodCallExpr call) {
+        try {
+            ResolvedMethodDeclaration d = call.resolve();
+            return new Resolved(d.getQualifiedName(), d.getSignature());
+        } catch (Throwable ignore) {
+            return null;
+        }
+    }
+
+    private static String keyOf(MethodCallExpr call, JavaParserFacade facade) {
+        StringBuilder k = new StringBuilder(96);
+        try {
+            if (call.getScope().isPresent()) {
+                if (!appendType(k, facade.getType(call.getScope().get()))) return null;
+            } else {
+                String owner = enclosingType(call);
+                if (owner == null) return null;
+                k.append("this ").append(owner);
+            }
+            k.append('#').append(call.getNameAsString()).append('(');
+            for (Expression a : call.getArguments()) {
+                if (a.isLambdaExpr() || a.isMethodReferenceExpr()) return null;
+                if (!appendType(k, facade.getType(a))) return null;
+                k.append(',');
+            }
+        } catch (Throwable e) {
+            // 作用域是类名（静态调用）等情况取不到类型，交给完整解析
+            return null;
+        }
+        return k.append(')').toString();
+    }
+
+    /**
+     * 类型变量在不同声明处边界不同，同名不代表同一类型，不能作为键
+     */
+    private static boolean appendType(StringBuilder k, ResolvedType t) {
+        if (t.isTypeVariable()) return false;
+        k.append(t.describe());
+        return true;
+    }
+
+    /**
+     * 无作用域调用按所在类型查找（含外部类和本文件的静态导入），键用该类型的全限定名；
+     * 匿名类、局部类没有稳定的名字，返回 null
+     */
+    private static String enclosingType(Node n) {
+        for (Optional<Node> p = n.getParentNode(); p.isPresent(); p = p.get().getParentNode()) {
+            Node parent = p.get();
+            if (parent instanceof ObjectCreationExpr && ((ObjectCreationExpr) parent).getAnonymousClassBody().isPresent()) {
+                return null;
+            }
+            if (parent instanceof TypeDeclaration) {
+                return ((TypeDeclaration<?>) parent).getFullyQualifiedName().orElse(null);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return memo + ", negativeHits=" + negativeHits.get() + ", bypassed=" + bypassed.get();
+    }
+
+    static final class Resolved {
+        final String qualifiedName;
+        final String signature;
+
+        Resolved(String qualifiedName, String signature) {
+            this.qualifiedName = qualifiedName;
+            this.signature = signature;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.scheduler.service.runner;
+
+import com.example.scheduler.config.SchedulerProperties;
+import com.example.scheduler.repo.ClaimedTask;
+import com.example.scheduler.repo.TaskRepo;
+import com.example.scheduler.service.TaskSignal;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * code.index 的分片模式（payload.shards &gt; 1）：把 root 下过滤后的源文件按所在目录（即包）分成至多 N 片，
+ * 每片作为一个 code.index 子任务入队（payload 带 shardDirs，输出到 out/shards/&lt;i&gt;），
+ * 另入队一个 code.index.merge 任务，所有分片 SUCCEED 后由它把各分片的 CSV 合并到 out。
+ * 子任务由集群里任意节点领取，大仓库的索引耗时随节点数缩短；符号解析仍以整个 root 为源码树，跨分片的调用照常解析。
+ * root、out 需为各节点都能访问的共享目录。ticket 由协调任务 id 派生，分片与合并任务在同一事务里写入，协调任务重试时不会重复入队。
+ */
+@Slf4j
+@Component
+public class CodeIndexCoordinator {
+    static final String MERGE_TYPE = "code.index.merge";
+
+    private final TaskRepo tasks;
+    private final TaskSignal signal;
+    private final SchedulerProperties props;
+    private final ObjectMapper mapper;
+    private final TransactionTemplate tx;
+
+    public CodeIndexCoordinator(TaskRepo tasks, TaskSignal signal, SchedulerProperties props, ObjectMapper mapper,
+                                PlatformTransactionManager txManager) {
+        this.tasks = tasks;
+        this.signal = signal;
+        this.props = props;
+        this.mapper = mapper;
+        this.tx = new TransactionTemplate(txManager);
+    }
+
+    /**
+     * @return 入队的分片数；root 下没有要索引的文件时返回 0，不入队任何任务
+     */
+    int fanOut(ClaimedTask task, JsonNode payload, Path root, Path out, CodeIndexRunner.PathFilter filter, int shards) throws Exception {
+        // 1. 按目录汇总源文件字节数
+        Map<String, Long> weights = new HashMap<>();
+        filter.walk(root, f -> weights.merge(CodeIndexRunner.PathFilter.parentDir(filter.relative(f)), Files.size(f), Long::sum));
+        if (weights.isEmpty()) return 0;
+
+        // 2. 大目录优先，每次放进当前最轻的分片
+        List<Map.Entry<String, Long>> dirs = new ArrayList<>(weights.entrySet());
+        dirs.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()));
+        int n = Math.min(shards, dirs.size());
+        long[] load = new long[n];
+        List<List<String>> parts = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) parts.add(new ArrayList<>());
+        for (Map.Entry<String, Long> d : dirs) {
+            int lightest = 0;
+            for (int i = 1; i < n; i++) {
+                if (load[i] < load[lightest]) lightest = i;
+            }
+            load[lightest] += d.getValue();
+            parts.get(lightest).add(d.getKey());
+        }
+
+        // 3. 分片子任务 + 合并任务，一个事务写入
+        String base = "code.index#" + task.getId();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        ObjectNode merge = mapper.createObjectNode();
+        merge.put("out", out.toString());
+        ArrayNode mergeParts = merge.putArray("parts");
+        ArrayNode mergeTickets = merge.putArray("tickets");
+        tx.executeWithoutResult(s -> {
+            int inserted = 0;
+            for (int i = 0; i < n; i++) {
+                String ticket = base + "#shard-" + i;
+                Path shardOut = out.resolve("shards").resolve(String.valueOf(i));
+                ObjectNode p = payload.deepCopy();
+                p.remove("shards");
+                p.put("out", shardOut.toString());
+                ArrayNode only = p.putArray("shardDirs");
+                List<String> ds = parts.get(i);
+                Collections.sort(ds);
+                ds.forEach(only::add);
+                inserted += tasks.insertIfNotExists(ticket, "code.index", p.toString(), 0, "PENDING", 0, maxAttempts("code.index"), now);
+                mergeParts.add(shardOut.toString());
+                mergeTickets.add(ticket);
+            }
+            Timestamp mergeAt = new Timestamp(now.getTime() + props.getCodeIndex().getMergePollInterval().toMillis());
+            inserted += tasks.insertIfNotExists(base + "#merge", MERGE_TYPE, merge.toString(), 0, "PENDING", 0, maxAttempts(MERGE_TYPE), mergeAt);
+            if (inserted > 0) signal.signalAfterCommit();
+        });
+        log.info("Code index fanned out: task={}, dirs={}, shards={}, bytesPerShard={}", task.getId(), dirs.size(), n, Arrays.toString(load));
+        return n;
+    }
+
+    private int maxAttempts(String type) {
+        return props.getRetry().policyFor(type).getMaxAttempts();
+    }
+}
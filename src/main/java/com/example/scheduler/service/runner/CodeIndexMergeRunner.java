@@ -0,0 +1,122 @@
+package com.example.scheduler.service.runner;
+
+import com.example.scheduler.config.SchedulerProperties;
+import com.example.scheduler.repo.TaskCount;
+import com.example.scheduler.repo.TaskRepo;
+import com.example.scheduler.service.TaskDeferredException;
+import com.example.scheduler.service.TaskRunner;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * code.index 分片模式的合并步骤：等全部分片子任务 SUCCEED 后，把各分片目录下的四个 CSV 按分片顺序拼接到 out。
+ * 还有分片未结束时推迟执行（不计次数）；有分片最终失败则合并失败。
+ * 去重以源文件为单位：同一个文件出现在多个分片的输出里时（如分片划分在重试之间变化）只保留第一个分片的行。
+ */
+@Slf4j
+@Component(CodeIndexCoordinator.MERGE_TYPE)
+@RequiredArgsConstructor
+public class CodeIndexMergeRunner implements TaskRunner {
+    private static final String[] OUTPUTS = {"classes.csv", "methods.csv", "fields.csv", "calls.csv"};
+
+    private final TaskRepo tasks;
+    private final SchedulerProperties props;
+
+    @Override
+    public String type() {
+        return CodeIndexCoordinator.MERGE_TYPE;
+    }
+
+    @Override
+    public void run(JsonNode payload) throws Exception {
+        Path out = Paths.get(payload.path("out").asText());
+        List<Path> parts = new ArrayList<>();
+        payload.path("parts").forEach(n -> parts.add(Paths.get(n.asText())));
+        List<String> tickets = new ArrayList<>();
+        payload.path("tickets").forEach(n -> tickets.add(n.asText()));
+
+        long succeeded = 0;
+        long failed = 0;
+        if (!tickets.isEmpty()) {
+            for (TaskCount c : tasks.countByTicketNoIn(tickets)) {
+                if ("SUCCEED".equals(c.getStatus())) succeeded += c.getCount();
+                else if ("FAILED".equals(c.getStatus())) failed += c.getCount();
+            }
+        }
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " of " + tickets.size() + " code.index shards failed, see tickets " + tickets);
+        }
+        if (succeeded < tickets.size()) {
+            throw new TaskDeferredException(succeeded + "/" + tickets.size() + " code.index shards done",
+                    props.getCodeIndex().getMergePollInterval());
+        }
+
+        Files.createDirectories(out);
+        long rows = 0;
+        for (String name : OUTPUTS) {
+            rows += merge(parts, name, out.resolve(name));
+        }
+        log.info("Code index shards merged: {}, shards={}, rows={}", out, parts.size(), rows);
+    }
+
+    /**
+     * 先写临时文件再替换，合并中途失败不会留下半个 CSV
+     */
+    private long merge(List<Path> parts, String name, Path target) throws IOException {
+        Path tmp = target.resolveSibling(name + ".tmp");
+        Set<String> claimed = new HashSet<>();
+        long rows = 0;
+        CSVPrinter printer = null;
+        boolean moved = false;
+        try {
+            for (Path part : parts) {
+                Set<String> files = new HashSet<>();
+                try (Reader r = Files.newBufferedReader(part.resolve(name), StandardCharsets.UTF_8);
+                     CSVParser parser = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build().parse(r)) {
+                    if (printer == null) {
+                        CSVFormat fmt = CSVFormat.DEFAULT.builder().setHeader(parser.getHeaderNames().toArray(new String[0])).build();
+                        printer = new CSVPrinter(new OutputStreamWriter(Files.newOutputStream(tmp), StandardCharsets.UTF_8), fmt);
+                    }
+                    for (CSVRecord rec : parser) {
+                        String file = rec.get("file");
+                        if (claimed.contains(file)) continue;
+                        files.add(file);
+                        printer.printRecord(rec);
+                        rows++;
+                    }
+                }
+                claimed.addAll(files);
+            }
+            if (printer != null) {
+                printer.close();
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                moved = true;
+            }
+        } finally {
+            if (!moved && printer != null) {
+                printer.close();
+                Files.deleteIfExists(tmp);
+            }
+        }
+        return rows;
+    }
+}
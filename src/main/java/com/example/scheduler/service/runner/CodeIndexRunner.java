@@ -1,5 +1,10 @@
 package com.example.scheduler.service.runner;
 
+import com.example.scheduler.config.SchedulerProperties;
+import com.example.scheduler.jfr.CodeIndexParseEvent;
+import com.example.scheduler.repo.ClaimedTask;
+import com.example.scheduler.jfr.CodeIndexResolveEvent;
+import com.example.scheduler.jfr.CodeIndexWriteEvent;
 import com.example.scheduler.service.TaskRunner;
 import com.fasterxml.jackson.databind.JsonNode;
 import lombok.RequiredArgsConstructor;
@@ -7,8 +12,11 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 
-import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseResult;
 import com.github.javaparser.ParserConfiguration;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.NodeList;
@@ -18,11 +26,13 @@ import com.github.javaparser.ast.expr.AnnotationExpr;
 import com.github.javaparser.ast.expr.MethodCallExpr;
 import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.github.javaparser.javadoc.Javadoc;
-import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
 import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.JarTypeSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
 
 import java.io.IOException;
@@ -30,19 +40,45 @@ import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Slf4j
 @Component("code.index")
 @RequiredArgsConstructor
 public class CodeIndexRunner implements TaskRunner {
+    /**
+     * 类型解析缓存上限：类型名 → 解析结果（含解析不到的），以及源码 solver 解析过的文件/目录
+     */
+    private static final int TYPE_CACHE_SIZE = 20_000;
+    private static final int SOURCE_FILE_CACHE_SIZE = 1_000;
+    private static final int SOURCE_DIR_CACHE_SIZE = 200;
+    private static final int CALL_CACHE_SIZE = 100_000;
+
+    private final SchedulerProperties props;
+    private final JarSolverCache jarSolvers;
+    private final CodeIndexCoordinator coordinator;
 
     @Override
     public String type() {
         return "code.index";
     }
 
+    /**
+     * payload.shards &gt; 1 时作为协调任务，只分片入队（见 {@link CodeIndexCoordinator}）；分片子任务和普通任务直接索引
+     */
+    @Override
+    public void run(ClaimedTask task, JsonNode payload) throws Exception {
+        int shards = readInt(payload, "shards", 1);
+        if (shards > 1 && payload != null && !payload.has("shardDirs")) {
+            Path root = Paths.get(req(payload, "root"));
+            PathFilter filter = new PathFilter(root, readStringArray(payload, "includes"), readStringArray(payload, "excludes"));
+            if (coordinator.fanOut(task, payload, root, Paths.get(req(payload, "out")), filter, shards) > 0) return;
+            // 没有要索引的文件，直接在本地跑，照常写出只有表头的 CSV
+        }
+        run(payload);
+    }
+
     @Override
     public void run(JsonNode payload) throws Exception {
         Path root = Paths.get(req(payload, "root"));
@@ -53,22 +89,28 @@ public class CodeIndexRunner implements TaskRunner {
         List<String> includeGlobs = readStringArray(payload, "includes"); // 可选
         List<String> excludeGlobs = readStringArray(payload, "excludes"); // 可选（在默认排除之外再加）
         PathFilter filter = new PathFilter(root, includeGlobs, excludeGlobs);
+        // 分片子任务：只索引分到的目录
+        if (payload != null && payload.has("shardDirs")) filter.restrictTo(readStringArray(payload, "shardDirs"));
 
         // --- Symbol solver ---
-        CombinedTypeSolver solver = new CombinedTypeSolver();
-        solver.add(new ReflectionTypeSolver(false)); // JRE
-        solver.add(new JavaParserTypeSolver(root.toFile())); // 源码树
-
-        if (payload != null && payload.has("classpath") && payload.get("classpath").isArray()) {
-            for (JsonNode n : payload.get("classpath")) {
-                String cp = n.asText();
+        // solver 链上的缓存换成有界 LRU，大仓库里不会无限增长，命中率在结束时打印
+        List<LruCache<?, ?>> caches = Collections.synchronizedList(new ArrayList<>());
+        // classpath 条目按给出的顺序排在源码树之后，每条记为一个 solver 工厂，各解析线程按同样顺序各建一份
+        List<Supplier<TypeSolver>> classpathSolvers = new ArrayList<>();
+        List<String> classpath = readStringArray(payload, "classpath");
+        // 依赖 jar 的符号表由进程级缓存提供，多次运行、并发运行共享；运行结束时归还引用
+        List<JarSolverCache.Lease> jars = new ArrayList<>();
+        try {
+            for (String cp : classpath) {
                 try {
                     Path p = Paths.get(cp);
                     if (Files.isRegularFile(p) && cp.toLowerCase(Locale.ROOT).endsWith(".jar")) {
-                        solver.add(new JarTypeSolver(p));
+                        JarSolverCache.Lease lease = jarSolvers.acquire(p);
+                        jars.add(lease);
+                        classpathSolvers.add(lease::solver);
                     } else if (Files.isDirectory(p)) {
                         // 若给的是源码目录/依赖源码，也支持
-                        solver.add(new JavaParserTypeSolver(p));
+                        classpathSolvers.add(() -> sourceSolver(p, "classpath-source", caches));
                     } else {
                         log.warn("Classpath entry not usable: {}", cp);
                     }
@@ -76,100 +118,222 @@ public class CodeIndexRunner implements TaskRunner {
                     log.warn("Classpath entry not usable by symbol solver: {}", cp, e);
                 }
             }
-        }
-        StaticJavaParser.getConfiguration().setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_11).setAttributeComments(false).setDoNotAssignCommentsPrecedingEmptyLines(false).setSymbolResolver(new JavaSymbolSolver(solver));
+            int parallelism = Math.max(1, readInt(payload, "parallelism", Runtime.getRuntime().availableProcessors()));
+            // 每个解析线程一套自己的 JavaParser、solver 链和 JavaSymbolSolver，不再改全局 StaticJavaParser，并发的 code.index 任务互不干扰。
+            // solver 链不能跨线程共享：JavaParserTypeSolver 解析源码时复用内部的同一个 JavaParser，每次解析前 reset。
+            // 调用解析的记忆化结果只是限定名和签名，与线程无关，所有解析线程共享
+            CallResolver calls = new CallResolver(readInt(payload, "resolveCacheSize", CALL_CACHE_SIZE));
+            ThreadLocal<Resolution> resolutions = ThreadLocal.withInitial(() -> new Resolution(root, classpathSolvers, caches));
+
+            // --- Incremental manifest ---
+            // 大小、mtime 都没变的文件直接沿用上次的行；变了再比内容哈希。incremental=false 强制全量。
+            // 只重新解析变化的文件，未变化文件里指向已变化文件的调用解析结果可能过时，需要时跑一次全量。
+            // 清单与遍历同序，边遍历边归并读取，不整体装入内存
+            String fingerprint = IndexManifest.fingerprint(includeGlobs, excludeGlobs, classpath);
+            boolean incremental = payload == null || payload.path("incremental").asBoolean(true);
+
+            // --- Walk → read → parse/extract → write, bounded by in-flight files and heap budget ---
+            // 遍历时跳过被排除的目录，各段之间用有界队列衔接，写出按遍历顺序
+            SchedulerProperties.CodeIndex cfg = props.getCodeIndex();
+            long heapBudget = payload != null && payload.has("heapBudgetMb")
+                    ? DataSize.ofMegabytes(readInt(payload, "heapBudgetMb", 0)).toBytes()
+                    : cfg.getHeapBudget().toBytes();
+            CsvSink sink;
+            int removed;
+            try (IndexManifest.Reader previous = incremental ? IndexManifest.open(out, fingerprint) : IndexManifest.Reader.EMPTY;
+
+                 CSVPrinter classesCsv = csv(out.resolve("classes.csv"), "package", "kind", "name", "qualified", "modifiers", "extends", "implements", "typeParams", "annotations", "deprecated", "javadoc", "file", "line");
+
+                 CSVPrinter methodsCsv = csv(out.resolve("methods.csv"), "class", "method", "signature", "returnType", "modifiers", "annotations", "parameters", "throws", "deprecated", "javadoc", "file", "line");
+
+                 CSVPrinter fieldsCsv = csv(out.resolve("fields.csv"), "class", "field", "type", "modifiers", "annotations", "deprecated", "javadoc", "file", "line");
+
+                 CSVPrinter callsCsv = csv(out.resolve("calls.csv"), "callerClass", "callerMethod", "calleeQualified", "calleeSignature", "file", "line");
+
+                 IndexManifest.Writer manifest = IndexManifest.create(out, fingerprint)) {
+                IndexPipeline pipeline = new IndexPipeline(root, previous, parallelism, heapBudget, cfg.getMmapThreshold().toBytes());
+                sink = new CsvSink(classesCsv, methodsCsv, fieldsCsv, callsCsv, manifest);
+                pipeline.run(filter, (idx, code) -> indexFile(idx, code, resolutions.get(), calls), sink::write);
+                // 旧清单读完、关闭后再替换
+                removed = previous.finish();
+                manifest.commit();
+            }
 
-        // --- Collect java files with filters applied ---
-        List<Path> javaFiles = new ArrayList<>();
-        try (Stream<Path> s = Files.walk(root)) {
-            s.filter(p -> p.toString().endsWith(".java")).filter(filter::accept).forEach(javaFiles::add);
+            log.info("Code index with filters & extra dimensions done: {}, files={}, parsed={}, reused={}, removed={}, prunedDirs={}, parallelism={}",
+                    out, filter.files, sink.parsed, sink.reused, removed, filter.prunedDirs, parallelism);
+            if (sink.parsed > 0) log.info("Code index resolution caches: {}; {}; {}", calls, caches, jarSolvers);
+        } finally {
+            jars.forEach(JarSolverCache.Lease::close);
         }
+    }
 
-        // --- CSVs ---
-        try (CSVPrinter classesCsv = csv(out.resolve("classes.csv"), "package", "kind", "name", "qualified", "modifiers", "extends", "implements", "typeParams", "annotations", "deprecated", "javadoc", "file", "line");
-
-             CSVPrinter methodsCsv = csv(out.resolve("methods.csv"), "class", "method", "signature", "returnType", "modifiers", "annotations", "parameters", "throws", "deprecated", "javadoc", "file", "line");
-
-             CSVPrinter fieldsCsv = csv(out.resolve("fields.csv"), "class", "field", "type", "modifiers", "annotations", "deprecated", "javadoc", "file", "line");
-
-             CSVPrinter callsCsv = csv(out.resolve("calls.csv"), "callerClass", "callerMethod", "calleeQualified", "calleeSignature", "file", "line")) {
-            for (Path f : javaFiles) {
-                String code = Files.readString(f, StandardCharsets.UTF_8);
-                CompilationUnit cu;
-                try {
-                    cu = StaticJavaParser.parse(code);
-                } catch (Throwable ex) {
-                    log.warn("Parse failed: {}", f, ex);
-                    continue;
+    /**
+     * 解析读取段读入的源码，提取四类索引行填入 idx；解析失败时不产生行（同样记入清单）
+     */
+    private void indexFile(FileIndex idx, String code, Resolution resolution, CallResolver calls) {
+        final String fileRel = idx.file;
+        CodeIndexParseEvent parseEvent = new CodeIndexParseEvent();
+        parseEvent.begin();
+        CompilationUnit cu;
+        try {
+            ParseResult<CompilationUnit> result = resolution.parser.parse(code);
+            // 与 StaticJavaParser 一致：有语法问题即视为失败
+            if (!result.isSuccessful()) throw new ParseProblemException(result.getProblems());
+            cu = result.getResult().get();
+        } catch (Throwable ex) {
+            log.warn("Parse failed: {}", fileRel, ex);
+            commitParse(parseEvent, fileRel, code.length(), false);
+            return;
+        }
+        commitParse(parseEvent, fileRel, code.length(), true);
+
+        final String pkg = cu.getPackageDeclaration().map(p -> p.getNameAsString()).orElse("");
+
+        // findAll(TypeDeclaration) 会包含内部类/局部类的声明，满足“内部类”需求
+        for (TypeDeclaration<?> td : cu.findAll(TypeDeclaration.class)) {
+            String kind = kindOf(td);
+            String simpleName = td.getNameAsString();
+            String qualified = pkg.isEmpty() ? simpleName : pkg + "." + simpleName;
+            String mods = td.getModifiers().stream().map(Object::toString).collect(Collectors.joining(" "));
+            String ext = extractExtends(td);
+            String impl = extractImplements(td);
+            String typeParams = (td instanceof ClassOrInterfaceDeclaration) ? ((ClassOrInterfaceDeclaration) td).getTypeParameters().toString() : "";
+            String anns = joinAnnotations(td.getAnnotations());
+            boolean deprecated = hasDeprecated(td.getAnnotations());
+            String jdoc = javadocSummary(td);
+
+            idx.classRows.add(new Object[]{pkg, kind, simpleName, qualified, mods, ext, impl, typeParams, anns, deprecated, jdoc, fileRel, line(td)});
+
+            // --- fields.csv ---
+            for (BodyDeclaration<?> m : td.getMembers()) {
+                if (m instanceof FieldDeclaration) {
+                    FieldDeclaration fd = (FieldDeclaration) m;
+                    String fmods = fd.getModifiers().stream().map(Object::toString).collect(Collectors.joining(" "));
+                    String fans = joinAnnotations(fd.getAnnotations());
+                    boolean fdep = hasDeprecated(fd.getAnnotations());
+                    String fjdoc = javadocSummary(fd);
+                    for (VariableDeclarator v : fd.getVariables()) {
+                        idx.fieldRows.add(new Object[]{qualified, v.getNameAsString(), v.getTypeAsString(), fmods, fans, fdep, fjdoc, fileRel, line(fd)});
+                    }
                 }
+            }
 
-                final String pkg = cu.getPackageDeclaration().map(p -> p.getNameAsString()).orElse("");
-                final String fileRel = root.relativize(f).toString();
-
-                // findAll(TypeDeclaration) 会包含内部类/局部类的声明，满足“内部类”需求
-                for (TypeDeclaration<?> td : cu.findAll(TypeDeclaration.class)) {
-                    String kind = kindOf(td);
-                    String simpleName = td.getNameAsString();
-                    String qualified = pkg.isEmpty() ? simpleName : pkg + "." + simpleName;
-                    String mods = td.getModifiers().stream().map(Object::toString).collect(Collectors.joining(" "));
-                    String ext = extractExtends(td);
-                    String impl = extractImplements(td);
-                    String typeParams = (td instanceof ClassOrInterfaceDeclaration) ? ((ClassOrInterfaceDeclaration) td).getTypeParameters().toString() : "";
-                    String anns = joinAnnotations(td.getAnnotations());
-                    boolean deprecated = hasDeprecated(td.getAnnotations());
-                    String jdoc = javadocSummary(td);
-
-                    write(classesCsv, pkg, kind, simpleName, qualified, mods, ext, impl, typeParams, anns, deprecated, jdoc, fileRel, line(td));
-
-                    // --- fields.csv ---
-                    for (BodyDeclaration<?> m : td.getMembers()) {
-                        if (m instanceof FieldDeclaration) {
-                            FieldDeclaration fd = (FieldDeclaration) m;
-                            String fmods = fd.getModifiers().stream().map(Object::toString).collect(Collectors.joining(" "));
-                            String fans = joinAnnotations(fd.getAnnotations());
-                            boolean fdep = hasDeprecated(fd.getAnnotations());
-                            String fjdoc = javadocSummary(fd);
-                            for (VariableDeclarator v : fd.getVariables()) {
-                                write(fieldsCsv, qualified, v.getNameAsString(), v.getTypeAsString(), fmods, fans, fdep, fjdoc, fileRel, line(fd));
-                            }
+            // --- methods.csv + calls.csv ---
+            for (BodyDeclaration<?> m : td.getMembers()) {
+                if (m instanceof MethodDeclaration) {
+                    MethodDeclaration md = (MethodDeclaration) m;
+                    String mname = md.getNameAsString();
+                    String ret = md.getType().asString();
+                    String mmods = md.getModifiers().stream().map(Object::toString).collect(Collectors.joining(" "));
+                    String manns = joinAnnotations(md.getAnnotations());
+                    boolean mdep = hasDeprecated(md.getAnnotations());
+                    String params = md.getParameters().stream().map(p -> p.getTypeAsString() + " " + p.getNameAsString()).collect(Collectors.joining(", "));
+                    String sig = mname + "(" + md.getParameters().stream().map(p -> p.getTypeAsString()).collect(Collectors.joining(",")) + ")";
+                    String throwses = md.getThrownExceptions().stream().map(Object::toString).collect(Collectors.joining(", "));
+                    String mjdoc = javadocSummary(md);
+
+                    idx.methodRows.add(new Object[]{qualified, mname, sig, ret, mmods, manns, params, throwses, mdep, mjdoc, fileRel, line(md)});
+
+                    for (MethodCallExpr call : md.findAll(MethodCallExpr.class)) {
+                        String calleeQualified = "";
+                        String calleeSignature = call.getNameAsString() + "(" + call.getArguments().stream().map(a -> "?").collect(Collectors.joining(",")) + ")";
+                        CodeIndexResolveEvent resolveEvent = new CodeIndexResolveEvent();
+                        resolveEvent.begin();
+                        CallResolver.Resolved r = calls.resolve(call, resolution.facade);
+                        // 解析失败降级：保留局部名与占位签名
+                        if (r != null) {
+                            calleeQualified = r.qualifiedName;
+                            calleeSignature = r.signature;
                         }
-                    }
-
-                    // --- methods.csv + calls.csv ---
-                    for (BodyDeclaration<?> m : td.getMembers()) {
-                        if (m instanceof MethodDeclaration) {
-                            MethodDeclaration md = (MethodDeclaration) m;
-                            String mname = md.getNameAsString();
-                            String ret = md.getType().asString();
-                            String mmods = md.getModifiers().stream().map(Object::toString).collect(Collectors.joining(" "));
-                            String manns = joinAnnotations(md.getAnnotations());
-                            boolean mdep = hasDeprecated(md.getAnnotations());
-                            String params = md.getParameters().stream().map(p -> p.getTypeAsString() + " " + p.getNameAsString()).collect(Collectors.joining(", "));
-                            String sig = mname + "(" + md.getParameters().stream().map(p -> p.getTypeAsString()).collect(Collectors.joining(",")) + ")";
-                            String throwses = md.getThrownExceptions().stream().map(Object::toString).collect(Collectors.joining(", "));
-                            String mjdoc = javadocSummary(md);
-
-                            write(methodsCsv, qualified, mname, sig, ret, mmods, manns, params, throwses, mdep, mjdoc, fileRel, line(md));
-
-                            for (MethodCallExpr call : md.findAll(MethodCallExpr.class)) {
-                                String calleeQualified = "";
-                                String calleeSignature = call.getNameAsString() + "(" + call.getArguments().stream().map(a -> "?").collect(Collectors.joining(",")) + ")";
-                                try {
-                                    ResolvedMethodDeclaration r = call.resolve();
-                                    calleeQualified = r.getQualifiedName();
-                                    calleeSignature = r.getSignature();
-                                } catch (Throwable ignore) {
-                                    // 解析失败降级：保留局部名与占位签名
-                                }
-                                write(callsCsv, qualified, sig, calleeQualified, calleeSignature, fileRel, line(call));
-                            }
+                        resolveEvent.end();
+                        if (resolveEvent.shouldCommit()) {
+                            resolveEvent.file = fileRel;
+                            resolveEvent.line = line(call);
+                            resolveEvent.call = call.getNameAsString();
+                            resolveEvent.resolved = !calleeQualified.isEmpty();
+                            resolveEvent.commit();
                         }
+                        idx.callRows.add(new Object[]{qualified, sig, calleeQualified, calleeSignature, fileRel, line(call)});
                     }
                 }
             }
         }
+    }
+
+    /**
+     * 源码目录的 solver，解析文件/目录/类型三个缓存都用有界 LRU
+     */
+    private static JavaParserTypeSolver sourceSolver(Path dir, String name, List<LruCache<?, ?>> caches) {
+        LruCache<Path, Optional<CompilationUnit>> files = new LruCache<>(name + "-files", SOURCE_FILE_CACHE_SIZE);
+        LruCache<Path, List<CompilationUnit>> dirs = new LruCache<>(name + "-dirs", SOURCE_DIR_CACHE_SIZE);
+        LruCache<String, SymbolReference<ResolvedReferenceTypeDeclaration>> types = new LruCache<>(name + "-types", TYPE_CACHE_SIZE);
+        caches.add(files);
+        caches.add(dirs);
+        caches.add(types);
+        return new JavaParserTypeSolver(dir, new JavaParser(new ParserConfiguration()), files, dirs, types);
+    }
 
-        log.info("Code index with filters & extra dimensions done: {}", out);
+    /**
+     * 一个解析线程的解析环境：JRE → 源码树 → classpath 的 solver 链、挂着该链的 JavaParser 及其 JavaParserFacade
+     */
+    private static final class Resolution {
+        final JavaParser parser;
+        final JavaParserFacade facade;
+
+        Resolution(Path root, List<Supplier<TypeSolver>> classpathSolvers, List<LruCache<?, ?>> caches) {
+            LruCache<String, SymbolReference<ResolvedReferenceTypeDeclaration>> typeCache = new LruCache<>("types", TYPE_CACHE_SIZE);
+            caches.add(typeCache);
+            CombinedTypeSolver solver = new CombinedTypeSolver(e -> false, List.of(), typeCache);
+            solver.add(new ReflectionTypeSolver(false)); // JRE
+            solver.add(sourceSolver(root, "source", caches)); // 源码树
+            classpathSolvers.forEach(s -> solver.add(s.get()));
+            this.parser = new JavaParser(new ParserConfiguration()
+                    .setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_11)
+                    .setAttributeComments(false)
+                    .setDoNotAssignCommentsPrecedingEmptyLines(false)
+                    .setSymbolResolver(new JavaSymbolSolver(solver)));
+            this.facade = JavaParserFacade.get(solver);
+        }
+    }
+
+    /**
+     * 唯一的写出端：只在调用 run 的线程上按文件顺序写 CSV 和新清单，不需要加锁
+     */
+    private static final class CsvSink {
+        private final CSVPrinter classes;
+        private final CSVPrinter methods;
+        private final CSVPrinter fields;
+        private final CSVPrinter calls;
+        private final IndexManifest.Writer manifest;
+        int parsed;
+        int reused;
+
+        CsvSink(CSVPrinter classes, CSVPrinter methods, CSVPrinter fields, CSVPrinter calls,
+                IndexManifest.Writer manifest) {
+            this.classes = classes;
+            this.methods = methods;
+            this.fields = fields;
+            this.calls = calls;
+            this.manifest = manifest;
+        }
+
+        void write(FileIndex idx) throws IOException {
+            if (idx.reused) reused++;
+            else parsed++;
+            CodeIndexWriteEvent writeEvent = new CodeIndexWriteEvent();
+            writeEvent.begin();
+            writeAll(classes, idx.classRows);
+            writeAll(methods, idx.methodRows);
+            writeAll(fields, idx.fieldRows);
+            writeAll(calls, idx.callRows);
+            manifest.add(idx);
+            writeEvent.end();
+            if (writeEvent.shouldCommit()) {
+                writeEvent.file = idx.file;
+                writeEvent.rows = idx.rowCount();
+                writeEvent.commit();
+            }
+        }
     }
 
     // ---------------- helpers ----------------
@@ -179,6 +343,11 @@ public class CodeIndexRunner implements TaskRunner {
         return p.get(k).asText();
     }
 
+    private int readInt(JsonNode p, String key, int def) {
+        if (p == null || !p.hasNonNull(key)) return def;
+        return p.get(key).asInt(def);
+    }
+
     private List<String> readStringArray(JsonNode p, String key) {
         if (p == null || !p.has(key) || !p.get(key).isArray()) return Collections.emptyList();
         List<String> list = new ArrayList<>();
@@ -194,14 +363,21 @@ public class CodeIndexRunner implements TaskRunner {
         return new CSVPrinter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), fmt);
     }
 
-    private void write(CSVPrinter p, Object... vals) {
-        try {
-            p.printRecord(vals);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    private static void writeAll(CSVPrinter p, List<Object[]> rows) throws IOException {
+        for (Object[] row : rows) {
+            p.printRecord(row);
         }
     }
 
+    private static void commitParse(CodeIndexParseEvent ev, String file, long chars, boolean ok) {
+        ev.end();
+        if (!ev.shouldCommit()) return;
+        ev.file = file;
+        ev.chars = chars;
+        ev.succeeded = ok;
+        ev.commit();
+    }
+
     private String kindOf(TypeDeclaration<?> td) {
         if (td.isClassOrInterfaceDeclaration()) {
             return td.asClassOrInterfaceDeclaration().isInterface() ? "interface" : "class";
@@ -282,11 +458,26 @@ public class CodeIndexRunner implements TaskRunner {
      * （任何路径片段为 test 的目录）
      * 2) includes：glob 白名单（相对 root）；若非空，则必须命中其一才保留
      * 3) excludes：glob 黑名单（相对 root）；命中则排除
+     * glob 在构造时编译一次；以 /** 结尾的排除规则同时用于遍历时整棵跳过目录
      */
     static class PathFilter {
         private final Path root;
-        private final List<PathMatcher> includeMatchers;
-        private final List<PathMatcher> excludeMatchers;
+        private final List<Glob> includeMatchers;
+        private final List<Glob> excludeMatchers;
+        /**
+         * 以 /** 结尾的排除规则去掉 /** 后的部分：目录命中即其下所有文件都会被排除
+         */
+        private final List<Glob> dirExcludeMatchers;
+        /**
+         * 分片子任务只索引这些目录（相对 root，不含其子目录）中的文件；null 表示不限
+         */
+        private Set<String> onlyDirs;
+        /**
+         * onlyDirs 及其各级上级目录，其余目录遍历时整棵跳过
+         */
+        private Set<String> keepDirs;
+        int files;
+        int prunedDirs;
 
         private static final List<String> DEFAULT_EXCLUDES = Arrays.asList("target/**", "build/**", ".idea/**", "generated/**", "**/test/**", "**/tests/**", "**/it/**");
 
@@ -298,33 +489,102 @@ public class CodeIndexRunner implements TaskRunner {
 
             this.includeMatchers = toMatchers(fs, includes);
             this.excludeMatchers = toMatchers(fs, ex);
+            List<String> dirEx = new ArrayList<>();
+            for (String g : ex) {
+                String body = g == null ? "" : g.startsWith("glob:") ? g.substring("glob:".length()) : g;
+                if (body.endsWith("/**") && body.length() > 3) dirEx.add(body.substring(0, body.length() - 3));
+            }
+            this.dirExcludeMatchers = toMatchers(fs, dirEx);
+        }
+
+        void restrictTo(Collection<String> dirs) {
+            onlyDirs = new HashSet<>(dirs);
+            keepDirs = new HashSet<>();
+            for (String d : dirs) {
+                String a = d;
+                while (keepDirs.add(a) && !a.isEmpty()) a = parentDir(a);
+            }
+        }
+
+        /**
+         * 遍历 start 下的 .java 文件：深度优先，每个目录内按名称排序，顺序稳定，与增量清单的顺序一致（见 IndexManifest.compareWalkOrder）。
+         * 被排除的目录整棵跳过，不再列出其中的文件；通过过滤的文件立即交给 sink，不先收集成列表
+         */
+        void walk(Path start, FileSink sink) throws Exception {
+            walkDir(start, sink);
+        }
+
+        private void walkDir(Path dir, FileSink sink) throws Exception {
+            List<Path> children = new ArrayList<>();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                ds.forEach(children::add);
+            }
+            children.sort(Comparator.comparing(c -> c.getFileName().toString()));
+            for (Path c : children) {
+                // 与 Files.walkFileTree 一样不跟随目录的符号链接
+                if (Files.isDirectory(c, LinkOption.NOFOLLOW_LINKS)) {
+                    if (prune(c)) {
+                        prunedDirs++;
+                        continue;
+                    }
+                    walkDir(c, sink);
+                } else if (c.toString().endsWith(".java") && accept(c)) {
+                    files++;
+                    sink.accept(c);
+                }
+            }
         }
 
         boolean accept(Path p) {
             Path rel = safeRel(root, p);
             String unix = toUnix(rel);
+            if (onlyDirs != null && !onlyDirs.contains(parentDir(unix))) return false;
 
             // 默认排除
-            for (PathMatcher m : excludeMatchers) {
-                if (m.matches(Paths.get(unix))) return false;
+            for (Glob m : excludeMatchers) {
+                if (m.matches(unix, rel)) return false;
             }
             // 若定义了 includes，必须至少命中一个
             if (!includeMatchers.isEmpty()) {
-                for (PathMatcher m : includeMatchers) {
-                    if (m.matches(Paths.get(unix))) return true;
+                for (Glob m : includeMatchers) {
+                    if (m.matches(unix, rel)) return true;
                 }
                 return false;
             }
             return true;
         }
 
-        private static List<PathMatcher> toMatchers(FileSystem fs, List<String> globs) {
-            List<PathMatcher> ms = new ArrayList<>();
+        private boolean prune(Path dir) {
+            Path rel = safeRel(root, dir);
+            String unix = toUnix(rel);
+            if (keepDirs != null && !keepDirs.contains(unix)) return true;
+            for (Glob m : dirExcludeMatchers) {
+                if (m.matches(unix, rel)) return true;
+            }
+            return false;
+        }
+
+        /**
+         * 相对 root、以 / 分隔的路径
+         */
+        String relative(Path p) {
+            return toUnix(safeRel(root, p));
+        }
+
+        /**
+         * 相对路径的所在目录，root 下的文件为 ""
+         */
+        static String parentDir(String unix) {
+            int i = unix.lastIndexOf('/');
+            return i < 0 ? "" : unix.substring(0, i);
+        }
+
+        private static List<Glob> toMatchers(FileSystem fs, List<String> globs) {
+            List<Glob> ms = new ArrayList<>();
             if (globs != null) {
                 for (String g : globs) {
                     if (g == null || g.isEmpty()) continue;
-                    String pat = g.startsWith("glob:") ? g : "glob:" + g;
-                    ms.add(fs.getPathMatcher(pat));
+                    ms.add(Glob.compile(fs, g));
                 }
             }
             return ms;
@@ -343,4 +603,81 @@ public class CodeIndexRunner implements TaskRunner {
             return s.replace('\\', '/');
         }
     }
-}
\ No newline at end of file
+
+    interface FileSink {
+        void accept(Path file) throws Exception;
+    }
+
+    /**
+     * 编译好的 glob。常见形状直接比较字符串（与 PathMatcher 的语义一致）：
+     * L、L/**、**&#47;L/**、**S、**&#47;*S、*S（L、S 不含通配符），其余交给 PathMatcher。
+     * 字符串比较只在分隔符为 / 的文件系统上启用（Windows 的 glob 不区分大小写）
+     */
+    private static final class Glob {
+        private enum Kind {EXACT, PREFIX, SEGMENT, SUFFIX, NESTED_NAME_SUFFIX, NAME_SUFFIX, MATCHER}
+
+        private final Kind kind;
+        private final String literal;
+        private final PathMatcher matcher;
+
+        private Glob(Kind kind, String literal, PathMatcher matcher) {
+            this.kind = kind;
+            this.literal = literal;
+            this.matcher = matcher;
+        }
+
+        static Glob compile(FileSystem fs, String glob) {
+            String body = glob.startsWith("glob:") ? glob.substring("glob:".length()) : glob;
+            if ("/".equals(fs.getSeparator())) {
+                if (isLiteral(body)) return new Glob(Kind.EXACT, body, null);
+                if (body.endsWith("/**")) {
+                    String head = body.substring(0, body.length() - 3);
+                    if (isLiteral(head)) return new Glob(Kind.PREFIX, head + "/", null);
+                    if (head.startsWith("**/") && isLiteral(head.substring(3)) && head.indexOf('/', 3) < 0) {
+                        return new Glob(Kind.SEGMENT, "/" + head.substring(3) + "/", null);
+                    }
+                }
+                if (body.startsWith("**/*") && isLiteral(body.substring(4)) && body.indexOf('/', 4) < 0) {
+                    return new Glob(Kind.NESTED_NAME_SUFFIX, body.substring(4), null);
+                }
+                if (body.startsWith("**") && isLiteral(body.substring(2))) {
+                    return new Glob(Kind.SUFFIX, body.substring(2), null);
+                }
+                if (body.startsWith("*") && isLiteral(body.substring(1)) && body.indexOf('/') < 0) {
+                    return new Glob(Kind.NAME_SUFFIX, body.substring(1), null);
+                }
+            }
+            return new Glob(Kind.MATCHER, null, fs.getPathMatcher("glob:" + body));
+        }
+
+        private static boolean isLiteral(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                if ("*?[]{}\\".indexOf(s.charAt(i)) >= 0) return false;
+            }
+            return true;
+        }
+
+        /**
+         * @param unix 相对 root、以 / 分隔的路径
+         * @param rel  同一路径的 Path 形式，仅 PathMatcher 使用
+         */
+        boolean matches(String unix, Path rel) {
+            switch (kind) {
+                case EXACT:
+                    return unix.equals(literal);
+                case PREFIX:
+                    return unix.startsWith(literal);
+                case SEGMENT:
+                    return unix.contains(literal);
+                case SUFFIX:
+                    return unix.endsWith(literal);
+                case NESTED_NAME_SUFFIX:
+                    return unix.endsWith(literal) && unix.indexOf('/') >= 0;
+                case NAME_SUFFIX:
+                    return unix.endsWith(literal) && unix.indexOf('/') < 0;
+                default:
+                    return matcher.matches(rel);
+            }
+        }
+    }
+}
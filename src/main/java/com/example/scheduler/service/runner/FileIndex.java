@@ -0,0 +1,33 @@
+package com.example.scheduler.service.runner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个源文件产生的索引行：解析线程产出（或从增量清单沿用），写出线程按文件顺序写入四个 CSV 和新清单
+ */
+final class FileIndex {
+    final String file;
+    final List<Object[]> classRows = new ArrayList<>();
+    final List<Object[]> methodRows = new ArrayList<>();
+    final List<Object[]> fieldRows = new ArrayList<>();
+    final List<Object[]> callRows = new ArrayList<>();
+    /**
+     * 源文件的大小、mtime 和内容哈希，记入清单供下次增量比较
+     */
+    long size;
+    long mtime;
+    String hash;
+    /**
+     * 本次沿用清单中的旧结果，未重新解析
+     */
+    boolean reused;
+
+    FileIndex(String file) {
+        this.file = file;
+    }
+
+    int rowCount() {
+        return classRows.size() + methodRows.size() + fieldRows.size() + callRows.size();
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.scheduler.service.runner;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 增量索引清单 out/index-manifest.jsonl.gz：首行为头部（格式版本 + 过滤/classpath 指纹），
+ * 之后每行一个源文件的 size、mtime、内容哈希及其产生的四类索引行，按遍历顺序排列，下次运行与遍历归并读取。
+ * 指纹或版本不一致、文件损坏时视为没有清单，整体重建。
+ */
+@Slf4j
+final class IndexManifest {
+    static final String FILE = "index-manifest.jsonl.gz";
+    /**
+     * 2：条目按遍历顺序（{@link #compareWalkOrder}）排列
+     */
+    private static final int VERSION = 2;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private IndexManifest() {
+    }
+
+    /**
+     * 打开上次运行的清单；没有、指纹或版本不一致、头部损坏时返回空清单
+     */
+    static Reader open(Path out, String fingerprint) {
+        Path file = out.resolve(FILE);
+        if (!Files.isRegularFile(file)) return Reader.EMPTY;
+        InputStream in = null;
+        try {
+            in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            MappingIterator<JsonNode> it = MAPPER.readerFor(JsonNode.class).readValues(in);
+            JsonNode header = it.hasNext() ? it.next() : null;
+            if (header == null || header.path("version").asInt() != VERSION
+                    || !fingerprint.equals(header.path("fingerprint").asText())) {
+                log.info("Index manifest {} does not match current options, rebuilding", file);
+                it.close();
+                return Reader.EMPTY;
+            }
+            return new Reader(file, it);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Index manifest {} unreadable, rebuilding", file, e);
+            closeQuietly(in);
+            return Reader.EMPTY;
+        }
+    }
+
+    /**
+     * 遍历顺序：按路径逐段比较，分隔符小于任何字符，即每个目录内按名称排序的深度优先顺序（见 PathFilter.walk）
+     */
+    static int compareWalkOrder(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        for (int i = 0; i < n; i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if (x == y) continue;
+            if (x == File.separatorChar) return -1;
+            if (y == File.separatorChar) return 1;
+            return x - y;
+        }
+        return a.length() - b.length();
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException ignore) {
+            // 只读
+        }
+    }
+
+    /**
+     * 清单中一个文件的条目；索引行保持为 JSON，确定沿用时才还原
+     */
+    static final class Entry {
+        final long size;
+        final long mtime;
+        final String hash;
+        private final JsonNode node;
+
+        private Entry(JsonNode node) {
+            this.size = node.path("size").asLong();
+            this.mtime = node.path("mtime").asLong();
+            this.hash = node.path("hash").asText();
+            this.node = node;
+        }
+
+        /**
+         * 沿用上次的索引行，mtime 换成本次看到的（只是 touch 过时下次可直接按 mtime 命中）
+         */
+        FileIndex reuse(String file, long mtime) {
+            FileIndex idx = new FileIndex(file);
+            idx.size = size;
+            idx.mtime = mtime;
+            idx.hash = hash;
+            idx.reused = true;
+            readRows(node.path("classes"), idx.classRows);
+            readRows(node.path("methods"), idx.methodRows);
+            readRows(node.path("fields"), idx.fieldRows);
+            readRows(node.path("calls"), idx.callRows);
+            return idx;
+        }
+    }
+
+    /**
+     * 上次的清单，与本次遍历按相同顺序归并读取：内存里只有当前一条，与仓库大小无关。
+     * 只在一个线程上按遍历顺序调用 find；中途读坏时其余文件视为没有旧结果
+     */
+    static final class Reader implements Closeable {
+        static final Reader EMPTY = new Reader(null, null);
+
+        private final Path file;
+        private MappingIterator<JsonNode> it;
+        private JsonNode head;
+        private int removed;
+
+        private Reader(Path file, MappingIterator<JsonNode> it) {
+            this.file = file;
+            this.it = it;
+        }
+
+        /**
+         * 前进到 file 的条目并返回，没有则返回 null；跳过的条目是已删除的文件
+         */
+        Entry find(String file) {
+            while (true) {
+                if (head == null && !advance()) return null;
+                int c = compareWalkOrder(head.get("file").asText(), file);
+                if (c > 0) return null;
+                JsonNode n = head;
+                head = null;
+                if (c == 0) return new Entry(n);
+                removed++;
+            }
+        }
+
+        /**
+         * 读完剩余条目并关闭，返回清单里本次已不存在的文件数
+         */
+        int finish() {
+            while (head != null || advance()) {
+                head = null;
+                removed++;
+            }
+            close();
+            return removed;
+        }
+
+        private boolean advance() {
+            if (it == null) return false;
+            try {
+                if (it.hasNext()) {
+                    head = it.next();
+                    return true;
+                }
+            } catch (RuntimeException e) {
+                log.warn("Index manifest {} truncated, remaining files are parsed again", file, e);
+            }
+            close();
+            return false;
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(it);
+            it = null;
+        }
+    }
+
+    private static void readRows(JsonNode rows, List<Object[]> target) {
+        for (JsonNode row : rows) {
+            Object[] values = new Object[row.size()];
+            for (int i = 0; i < values.length; i++) {
+                JsonNode v = row.get(i);
+                // 还原写入时的类型，CSV 输出与直接解析时一致
+                values[i] = v.isNull() ? null : v.isBoolean() ? v.booleanValue() : v.isInt() ? v.intValue() : v.asText();
+            }
+            target.add(values);
+        }
+    }
+
+    static Writer create(Path out, String fingerprint) throws IOException {
+        return new Writer(out, fingerprint);
+    }
+
+    /**
+     * 边写 CSV 边追加清单；先写临时文件，commit 时原子替换，运行中途失败时旧清单保持不变
+     */
+    static final class Writer implements Closeable {
+        private final Path target;
+        private final Path tmp;
+        private final OutputStream os;
+        private final JsonGenerator gen;
+        private boolean committed;
+
+        private Writer(Path out, String fingerprint) throws IOException {
+            this.target = out.resolve(FILE);
+            this.tmp = out.resolve(FILE + ".tmp");
+            this.os = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+            this.gen = MAPPER.getFactory().createGenerator(os);
+            gen.setRootValueSeparator(null);
+            gen.writeStartObject();
+            gen.writeNumberField("version", VERSION);
+            gen.writeStringField("fingerprint", fingerprint);
+            gen.writeEndObject();
+            gen.writeRaw('\n');
+        }
+
+        void add(FileIndex idx) throws IOException {
+            gen.writeStartObject();
+            gen.writeStringField("file", idx.file);
+            gen.writeNumberField("size", idx.size);
+            gen.writeNumberField("mtime", idx.mtime);
+            gen.writeStringField("hash", idx.hash);
+            writeRows("classes", idx.classRows);
+            writeRows("methods", idx.methodRows);
+            writeRows("fields", idx.fieldRows);
+            writeRows("calls", idx.callRows);
+            gen.writeEndObject();
+            gen.writeRaw('\n');
+        }
+
+        private void writeRows(String name, List<Object[]> rows) throws IOException {
+            gen.writeArrayFieldStart(name);
+            for (Object[] row : rows) {
+                gen.writeStartArray();
+                for (Object v : row) gen.writeObject(v);
+                gen.writeEndArray();
+            }
+            gen.writeEndArray();
+        }
+
+        void commit() throws IOException {
+            gen.close();
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (committed) return;
+            try {
+                gen.close();
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    /**
+     * 影响索引结果的选项指纹：includes/excludes 和 classpath（jar 带上 size、mtime）
+     */
+    static String fingerprint(List<String> includes, List<String> excludes, List<String> classpath) {
+        List<String> parts = new ArrayList<>();
+        parts.add("includes=" + includes);
+        parts.add("excludes=" + excludes);
+        for (String cp : classpath) {
+            Path p = Path.of(cp);
+            try {
+                parts.add(Files.isRegularFile(p) ? cp + "@" + Files.size(p) + "/" + Files.getLastModifiedTime(p).toMillis() : cp);
+            } catch (IOException e) {
+                parts.add(cp);
+            }
+        }
+        return String.join(";", parts);
+    }
+}
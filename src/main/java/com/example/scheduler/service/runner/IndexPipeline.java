@@ -0,0 +1,262 @@
+package com.example.scheduler.service.runner;
+
+import com.example.scheduler.jfr.CodeIndexWalkEvent;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * code.index 的分段流水线，段与段之间用有界队列连接：
+ * 遍历（单线程）→ 读取（单线程：与上次的清单归并比对、读入源码并算哈希，大文件走 mmap）→ 解析并提取（parallelism 个线程）
+ * → 写出（调用线程，按遍历顺序）。
+ * 在途文件数不超过 maxInFlight；在途文件（读入的源码，或从清单沿用的行）按源码大小计，总数不超过 heapBudget
+ * （提取出的行与源码大小大致成正比），额度用完时读取段阻塞，遍历段随之停在队列上，内存占用与仓库大小无关，
+ * 读取 I/O 与解析 CPU 重叠进行。
+ * 解析与提取放在同一段，CompilationUnit 只在解析线程里短暂存在，不进入队列。
+ */
+final class IndexPipeline {
+    private static final Slot END = new Slot(null);
+
+    private final Path root;
+    private final IndexManifest.Reader previous;
+    private final int parallelism;
+    private final int maxInFlight;
+    private final int budgetBytes;
+    private final long mmapThreshold;
+    private final Semaphore budget;
+    private volatile Throwable walkFailure;
+
+    IndexPipeline(Path root, IndexManifest.Reader previous, int parallelism, long heapBudget, long mmapThreshold) {
+        this.root = root;
+        this.previous = previous;
+        this.parallelism = parallelism;
+        this.maxInFlight = parallelism * 16;
+        this.budgetBytes = (int) Math.max(1, Math.min(heapBudget, Integer.MAX_VALUE));
+        this.mmapThreshold = mmapThreshold;
+        this.budget = new Semaphore(budgetBytes);
+    }
+
+    interface ParseStage {
+        /**
+         * 解析源码并填充 file 的四类索引行
+         */
+        void parse(FileIndex file, String source) throws Exception;
+    }
+
+    interface WriteStage {
+        void write(FileIndex file) throws IOException;
+    }
+
+    /**
+     * 运行整条流水线，返回时所有文件已按遍历顺序写出；任一文件读取失败或写出失败即中止其余各段并抛出
+     */
+    void run(CodeIndexRunner.PathFilter filter, ParseStage parser, WriteStage writer) throws Exception {
+        // 两个队列各多留一个位置给结束标记
+        BlockingQueue<Slot> pending = new ArrayBlockingQueue<>(maxInFlight + 1);
+        BlockingQueue<Slot> toRead = new ArrayBlockingQueue<>(maxInFlight + 1);
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService parsers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "code-index-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Thread walker = daemon("code-index-walk", () -> walk(filter, pending, toRead));
+        Thread reader = daemon("code-index-read", () -> read(toRead, parsers, parser));
+        try {
+            walker.start();
+            reader.start();
+            for (Slot s = pending.take(); s != END; s = pending.take()) {
+                writer.write(await(s.result));
+                budget.release(s.permits);
+            }
+            Throwable t = walkFailure;
+            if (t instanceof Exception) throw (Exception) t;
+            if (t instanceof Error) throw (Error) t;
+        } finally {
+            walker.interrupt();
+            reader.interrupt();
+            parsers.shutdownNow();
+        }
+    }
+
+    private void walk(CodeIndexRunner.PathFilter filter, BlockingQueue<Slot> pending, BlockingQueue<Slot> toRead) {
+        CodeIndexWalkEvent walkEvent = new CodeIndexWalkEvent();
+        walkEvent.begin();
+        try {
+            filter.walk(root, f -> {
+                Slot s = new Slot(f);
+                pending.put(s);
+                toRead.put(s);
+            });
+        } catch (Throwable e) {
+            walkFailure = e;
+        }
+        walkEvent.end();
+        if (walkEvent.shouldCommit()) {
+            walkEvent.root = root.toString();
+            walkEvent.files = filter.files;
+            walkEvent.prunedDirs = filter.prunedDirs;
+            walkEvent.commit();
+        }
+        try {
+            toRead.put(END);
+            pending.put(END);
+        } catch (InterruptedException ignore) {
+            // 写出段已中止
+        }
+    }
+
+    private void read(BlockingQueue<Slot> toRead, ExecutorService parsers, ParseStage parser) {
+        try {
+            for (Slot s = toRead.take(); s != END; s = toRead.take()) {
+                dispatch(s, parsers, parser);
+            }
+        } catch (InterruptedException ignore) {
+            // 写出段已中止
+        }
+    }
+
+    /**
+     * 读取一个文件：沿用的直接完成，需要解析的交给解析线程
+     */
+    private void dispatch(Slot s, ExecutorService parsers, ParseStage parser) throws InterruptedException {
+        FileIndex idx;
+        try {
+            idx = load(s);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Throwable e) {
+            s.result.completeExceptionally(e);
+            return;
+        }
+        String code = s.source;
+        if (code == null) {
+            s.result.complete(idx);
+            return;
+        }
+        // Slot 会留在写出队列里直到写出，源码交给解析段后不再由它引用
+        s.source = null;
+        parsers.execute(() -> {
+            try {
+                parser.parse(idx, code);
+                s.result.complete(idx);
+            } catch (Throwable e) {
+                s.result.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * 占用额度后，文件未变化时沿用清单里的结果；否则读入源码（放在 s.source，返回待填充的 FileIndex）。内容哈希与清单一致（只是 touch 过）时同样沿用
+     */
+    private FileIndex load(Slot s) throws IOException, InterruptedException {
+        Path f = s.file;
+        String fileRel = root.relativize(f).toString();
+        BasicFileAttributes attrs = Files.readAttributes(f, BasicFileAttributes.class);
+        long size = attrs.size();
+        long mtime = attrs.lastModifiedTime().toMillis();
+        IndexManifest.Entry prev = previous.find(fileRel);
+        // 超出额度的单个文件独占全部额度，等在它之前的文件都写出后再读
+        int permits = (int) Math.max(1, Math.min(size, budgetBytes));
+        budget.acquire(permits);
+        s.permits = permits;
+        if (prev != null && prev.size == size && prev.mtime == mtime) {
+            return prev.reuse(fileRel, mtime);
+        }
+
+        MessageDigest md = sha256();
+        String code;
+        if (size >= mmapThreshold) {
+            // 大文件映射到堆外直接算哈希和解码，不在堆上再复制一份字节
+            try (FileChannel ch = FileChannel.open(f, StandardOpenOption.READ)) {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                md.update(buf.duplicate());
+                code = StandardCharsets.UTF_8.decode(buf).toString();
+            }
+        } else {
+            byte[] bytes = Files.readAllBytes(f);
+            md.update(bytes);
+            code = new String(bytes, StandardCharsets.UTF_8);
+        }
+        String hash = hex(md.digest());
+        if (prev != null && prev.hash.equals(hash)) {
+            // 只是 touch 过（或重新 checkout），内容没变
+            return prev.reuse(fileRel, mtime);
+        }
+        FileIndex idx = new FileIndex(fileRel);
+        idx.size = size;
+        idx.mtime = mtime;
+        idx.hash = hash;
+        s.source = code;
+        return idx;
+    }
+
+    /**
+     * 等待一个文件的结果，读取或解析线程抛出的异常原样抛出
+     */
+    private static FileIndex await(CompletableFuture<FileIndex> f) throws Exception {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof Exception) throw (Exception) c;
+            throw e;
+        }
+    }
+
+    private static Thread daemon(String name, Runnable r) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] d) {
+        StringBuilder sb = new StringBuilder(d.length * 2);
+        for (byte b : d) sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+
+    /**
+     * 一个文件在流水线中的位置：遍历段按顺序放入写出队列，读取/解析段完成 result
+     */
+    private static final class Slot {
+        final Path file;
+        final CompletableFuture<FileIndex> result = new CompletableFuture<>();
+        /**
+         * 占用的内存额度，写出后归还
+         */
+        int permits;
+        /**
+         * 读取段读入、待交给解析段的源码
+         */
+        String source;
+
+        Slot(Path file) {
+            this.file = file;
+        }
+    }
+}
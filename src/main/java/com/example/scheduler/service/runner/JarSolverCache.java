@@ -0,0 +1,245 @@
+package com.example.scheduler.service.runner;
+
+import com.example.scheduler.config.SchedulerProperties;
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+import com.github.javaparser.symbolsolver.javassistmodel.JavassistFactory;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * 进程级 jar 符号表缓存：按 (绝对路径, 大小, mtime) 缓存扫描过的 classpath jar（javassist ClassPool + 类名表），
+ * 并发和先后的 code.index 运行共享，重复索引同一工程时不再重新打开、扫描依赖 jar。
+ * 每次运行拿到的是自己的 TypeSolver 包装（parent 指向本次运行的 CombinedTypeSolver），底层 jar 数据共享。
+ * 运行期间持有引用的条目不会被淘汰；空闲条目按 LRU 淘汰，使缓存的 jar 总大小不超过 code-index.jar-cache-budget。
+ * jar 被替换（大小或 mtime 变化）时按新键重新加载，旧版本空闲后即丢弃。
+ */
+@Slf4j
+@Component
+public class JarSolverCache {
+    private final long budgetBytes;
+    private final LinkedHashMap<Key, JarIndex> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long loads;
+    private long evictions;
+
+    public JarSolverCache(SchedulerProperties props) {
+        this.budgetBytes = props.getCodeIndex().getJarCacheBudget().toBytes();
+    }
+
+    /**
+     * 取得（必要时加载）jar 的共享索引；返回的 Lease 在运行结束时必须 close 归还引用
+     */
+    public Lease acquire(Path jar) throws IOException {
+        Path abs = jar.toAbsolutePath().normalize();
+        BasicFileAttributes attrs = Files.readAttributes(abs, BasicFileAttributes.class);
+        Key key = new Key(abs.toString(), attrs.size(), attrs.lastModifiedTime().toMillis());
+        synchronized (this) {
+            JarIndex idx = entries.get(key);
+            if (idx != null) {
+                idx.refs++;
+                hits++;
+                return new Lease(this, idx);
+            }
+        }
+        // 扫描 jar 在锁外进行；两个运行同时加载同一个 jar 时，后完成的丢弃自己的结果，复用先放入的
+        long t0 = System.nanoTime();
+        JarIndex loaded = JarIndex.load(abs, attrs.size());
+        synchronized (this) {
+            JarIndex idx = entries.get(key);
+            if (idx == null) {
+                idx = loaded;
+                entries.values().removeIf(old -> {
+                    boolean stale = old.refs == 0 && old.path.equals(abs.toString());
+                    if (stale) totalBytes -= old.bytes;
+                    return stale;
+                });
+                entries.put(key, idx);
+                totalBytes += idx.bytes;
+                loads++;
+                log.info("Loaded classpath jar {} ({} classes) in {} ms", abs, idx.known.size(), (System.nanoTime() - t0) / 1_000_000);
+            } else {
+                hits++;
+            }
+            idx.refs++;
+            evictIdle();
+            return new Lease(this, idx);
+        }
+    }
+
+    private synchronized void release(JarIndex idx) {
+        idx.refs--;
+        evictIdle();
+    }
+
+    /**
+     * 超出预算时从最久未用的开始淘汰空闲条目；全部在用时允许暂时超出
+     */
+    private void evictIdle() {
+        for (Iterator<JarIndex> it = entries.values().iterator(); totalBytes > budgetBytes && it.hasNext(); ) {
+            JarIndex idx = it.next();
+            if (idx.refs > 0) continue;
+            it.remove();
+            totalBytes -= idx.bytes;
+            evictions++;
+            log.info("Evicted classpath jar {} from solver cache", idx.path);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("jars{size=%d, bytes=%d/%d, hits=%d, loads=%d, evicted=%d}",
+                entries.size(), totalBytes, budgetBytes, hits, loads, evictions);
+    }
+
+    /**
+     * 一次运行对一个 jar 的引用
+     */
+    public static final class Lease implements AutoCloseable {
+        private final JarSolverCache owner;
+        private final JarIndex idx;
+        private boolean closed;
+
+        private Lease(JarSolverCache owner, JarIndex idx) {
+            this.owner = owner;
+            this.idx = idx;
+        }
+
+        /**
+         * 本次运行专用的 TypeSolver，可加入一个 CombinedTypeSolver
+         */
+        public TypeSolver solver() {
+            return new SharedJarTypeSolver(idx);
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            owner.release(idx);
+        }
+    }
+
+    private static final class Key {
+        final String path;
+        final long size;
+        final long mtime;
+
+        Key(String path, long size, long mtime) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return size == k.size && mtime == k.mtime && path.equals(k.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, mtime);
+        }
+    }
+
+    /**
+     * 扫描好的 jar：与 JarTypeSolver 相同的类名表（嵌套类 $ 换成 .）和只含该 jar 的 ClassPool。
+     * 以 jar 文件大小作为占用估算
+     */
+    private static final class JarIndex {
+        final String path;
+        final long bytes;
+        final ClassPool pool;
+        final Map<String, String> known;
+        int refs;
+
+        private JarIndex(String path, long bytes, ClassPool pool, Map<String, String> known) {
+            this.path = path;
+            this.bytes = bytes;
+            this.pool = pool;
+            this.known = known;
+        }
+
+        static JarIndex load(Path jar, long bytes) throws IOException {
+            ClassPool pool = new ClassPool();
+            try {
+                pool.appendClassPath(jar.toString());
+            } catch (NotFoundException e) {
+                throw (IOException) new FileNotFoundException(e.getMessage()).initCause(e);
+            }
+            Map<String, String> known = new HashMap<>();
+            try (JarFile jf = new JarFile(jar.toFile())) {
+                for (Enumeration<JarEntry> en = jf.entries(); en.hasMoreElements(); ) {
+                    JarEntry e = en.nextElement();
+                    if (e.isDirectory() || !e.getName().endsWith(".class")) continue;
+                    String poolName = e.getName().substring(0, e.getName().length() - ".class".length()).replace('/', '.');
+                    known.put(poolName.replace('$', '.'), poolName);
+                }
+            }
+            return new JarIndex(jar.toString(), bytes, pool, known);
+        }
+    }
+
+    /**
+     * 按运行区分 parent 的 jar TypeSolver：声明用本次运行的 root solver 解析父类、接口等引用
+     */
+    private static final class SharedJarTypeSolver implements TypeSolver {
+        private final JarIndex idx;
+        private TypeSolver parent;
+
+        SharedJarTypeSolver(JarIndex idx) {
+            this.idx = idx;
+        }
+
+        @Override
+        public TypeSolver getParent() {
+            return parent;
+        }
+
+        @Override
+        public void setParent(TypeSolver parent) {
+            Objects.requireNonNull(parent);
+            if (this.parent != null) throw new IllegalStateException("This TypeSolver already has a parent.");
+            if (parent == this) throw new IllegalStateException("The parent of this TypeSolver cannot be itself.");
+            this.parent = parent;
+        }
+
+        @Override
+        public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+            String poolName = idx.known.get(name);
+            if (poolName == null) return SymbolReference.unsolved();
+            try {
+                CtClass c = idx.pool.get(poolName);
+                return SymbolReference.solved(JavassistFactory.toTypeDeclaration(c, getRoot()));
+            } catch (NotFoundException e) {
+                throw new IllegalStateException("Class " + poolName + " listed in " + idx.path + " but missing from its class pool", e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "SharedJarTypeSolver{" + idx.path + "}";
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.scheduler.service.runner;
+
+import com.github.javaparser.resolution.cache.Cache;
+import com.github.javaparser.resolution.cache.CacheStats;
+import com.github.javaparser.symbolsolver.cache.DefaultCacheStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 有界 LRU 缓存，实现 javaparser 的 Cache 接口，可直接交给 CombinedTypeSolver / JavaParserTypeSolver，
+ * 替换它们默认的无界缓存；记录命中、未命中和淘汰次数。解析线程共享，方法整体加锁。
+ */
+final class LruCache<K, V> implements Cache<K, V> {
+    private final String name;
+    private final LinkedHashMap<K, V> map;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    LruCache(String name, int maxSize) {
+        this.name = name;
+        int max = Math.max(1, maxSize);
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() <= max) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    String name() {
+        return name;
+    }
+
+    @Override
+    public synchronized void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    @Override
+    public synchronized Optional<V> get(K key) {
+        V v = map.get(key);
+        if (v == null) misses++;
+        else hits++;
+        return Optional.ofNullable(v);
+    }
+
+    @Override
+    public synchronized void remove(K key) {
+        map.remove(key);
+    }
+
+    @Override
+    public synchronized void removeAll() {
+        map.clear();
+    }
+
+    @Override
+    public synchronized boolean contains(K key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public synchronized long size() {
+        return map.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public synchronized CacheStats stats() {
+        return new DefaultCacheStats(hits, misses, 0, 0, 0, evictions);
+    }
+
+    @Override
+    public synchronized String toString() {
+        long total = hits + misses;
+        return String.format("%s{size=%d, hit=%.1f%% (%d/%d), evicted=%d}",
+                name, map.size(), total == 0 ? 0d : hits * 100d / total, hits, total, evictions);
+    }
+}
@@ -2,11 +2,17 @@ package com.example.scheduler.web;
 
 import com.example.scheduler.domain.BatchSchedule;
 import com.example.scheduler.domain.BatchTask;
+import com.example.scheduler.config.SchedulerProperties;
 import com.example.scheduler.repo.ScheduleRepo;
 import com.example.scheduler.repo.TaskRepo;
+import com.example.scheduler.repo.TaskSummary;
+import com.example.scheduler.service.ScheduleFireService;
 import com.example.scheduler.service.TaskRunner;
+import com.example.scheduler.service.TaskSignal;
+import com.example.scheduler.service.TaskStatsService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.annotation.Validated;
@@ -20,6 +26,10 @@ public class HomeController {
     private final ScheduleRepo scheduleRepo;
     private final TaskRepo taskRepo;
     private final List<TaskRunner> runners;
+    private final TaskSignal taskSignal;
+    private final TaskStatsService taskStats;
+    private final ScheduleFireService scheduleFire;
+    private final SchedulerProperties props;
     private final ObjectMapper mapper = new ObjectMapper();
 
     @GetMapping("/")
@@ -28,9 +38,20 @@ public class HomeController {
                        @RequestParam(value = "type", required = false) String lastType,
                        @RequestParam(value = "payload", required = false) String lastPayload,
                        @RequestParam(value = "cost", required = false) Long costMs,
-                       @RequestParam(value = "error", required = false) String error) {
+                       @RequestParam(value = "error", required = false) String error,
+                       @RequestParam(value = "taskStatus", required = false) String taskStatus,
+                       @RequestParam(value = "taskType", required = false) String taskType,
+                       @RequestParam(value = "before", required = false) Long before) {
+        int size = props.getDashboard().getPageSize();
+        List<TaskSummary> page = taskPage(taskStatus, taskType, before, size + 1);
+        boolean hasMore = page.size() > size;
+        if (hasMore) page = page.subList(0, size);
         model.addAttribute("schedules", scheduleRepo.findAll());
-        model.addAttribute("tasks", taskRepo.findAll());
+        model.addAttribute("tasks", page);
+        model.addAttribute("taskStatus", blankToNull(taskStatus));
+        model.addAttribute("taskType", blankToNull(taskType));
+        model.addAttribute("nextBefore", hasMore ? page.get(page.size() - 1).getId() : null);
+        model.addAttribute("stats", taskStats.stats());
         model.addAttribute("runners", runners);
         if (ok != null) {
             model.addAttribute("ok", ok);
@@ -42,6 +63,36 @@ public class HomeController {
         return "home";
     }
 
+    /**
+     * 任务列表（keyset 分页）：下一页传本页最后一条的 id 作为 before
+     */
+    @GetMapping("/api/tasks")
+    @ResponseBody
+    public List<TaskSummary> tasks(@RequestParam(value = "status", required = false) String status,
+                                   @RequestParam(value = "type", required = false) String type,
+                                   @RequestParam(value = "before", required = false) Long before,
+                                   @RequestParam(value = "size", required = false) Integer size) {
+        int n = size == null ? props.getDashboard().getPageSize() : Math.max(1, Math.min(size, 500));
+        return taskPage(status, type, before, n);
+    }
+
+    /**
+     * 按 status/type 聚合的任务数与最早可执行 PENDING 的等待时长（缓存数秒）
+     */
+    @GetMapping("/api/stats")
+    @ResponseBody
+    public TaskStatsService.TaskStats stats() {
+        return taskStats.stats();
+    }
+
+    private List<TaskSummary> taskPage(String status, String type, Long before, int size) {
+        return taskRepo.findPage(blankToNull(status), blankToNull(type), before, PageRequest.of(0, size));
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.trim().isEmpty() ? null : s.trim();
+    }
+
     @PostMapping("/manual/run")
     public String manualRun(@RequestParam String type,
                             @RequestParam(required = false) String payload) {
@@ -93,6 +144,7 @@ public class HomeController {
         }
         s.setPayload(json);
         scheduleRepo.save(s);
+        scheduleFire.invalidate(s.getId());
         return "redirect:/?ok=true";
     }
 
@@ -116,6 +168,7 @@ public class HomeController {
         t.setPayload(json);
         t.setStatus("PENDING");
         taskRepo.save(t);
+        taskSignal.signal();
         return "redirect:/?ok=true&type=" + urlEncode(type) + "&payload=" + urlEncode(json);
     }
 
@@ -0,0 +1,61 @@
+-- 历史归档表（scheduler.retention.mode=ARCHIVE 时需要），按 finish_at / ended_at 月度 RANGE 分区。
+-- 首尾各有一个兜底分区：pmin 收建表前结束的任务，pmax 收超出已建月份的任务，任何时间的行都有分区可落，
+-- 归档不会因为忘记加分区而失败。下面的月份只是示例，建表前改成从当前月份开始。
+-- 每月在 pmax 之前滚出下一个月（pmax 通常是空的）：卸下 pmax，追加新月份和新的 pmax，卸下的行写回后删表：
+--   ALTER TABLE batch_task_archive DETACH PARTITION pmax INTO batch_task_archive_pmax;
+--   ALTER TABLE batch_task_archive ADD PARTITION p202701 STARTING ('2027-01-01') ENDING ('2027-02-01') EXCLUSIVE;
+--   ALTER TABLE batch_task_archive ADD PARTITION pmax STARTING ('2027-02-01') ENDING (MAXVALUE);
+--   COMMIT;
+--   INSERT INTO batch_task_archive SELECT * FROM batch_task_archive_pmax;
+--   DROP TABLE batch_task_archive_pmax;
+-- batch_run_archive 同理。过期归档整段卸下再删除，不产生逐行删除和大量日志：
+--   ALTER TABLE batch_task_archive DETACH PARTITION p202609 INTO batch_task_archive_202609;
+--   DROP TABLE batch_task_archive_202609;
+-- 热表 batch_task 不分区：ticket_no 唯一约束和 IDENTITY 主键都不包含时间列，
+-- 由 RetentionService 把终态行移走，热表只保留在途任务。
+
+CREATE TABLE batch_task_archive (
+    id           BIGINT        NOT NULL,
+    ticket_no    VARCHAR(255),
+    type         VARCHAR(64)   NOT NULL,
+    payload      CLOB,
+    priority     INTEGER,
+    status       VARCHAR(16)   NOT NULL,
+    attempts     INTEGER,
+    max_attempts INTEGER,
+    owner        VARCHAR(64),
+    created_at   TIMESTAMP(3)  NOT NULL,
+    updated_at   TIMESTAMP(3)  NOT NULL,
+    finish_at    TIMESTAMP(3)  NOT NULL,
+    message      VARCHAR(2000),
+    PRIMARY KEY (id, finish_at)
+)
+PARTITION BY RANGE (finish_at)
+    (PARTITION pmin    STARTING (MINVALUE)     ENDING ('2026-09-01') EXCLUSIVE,
+     PARTITION p202609 STARTING ('2026-09-01') ENDING ('2026-10-01') EXCLUSIVE,
+     PARTITION p202610 STARTING ('2026-10-01') ENDING ('2026-11-01') EXCLUSIVE,
+     PARTITION p202611 STARTING ('2026-11-01') ENDING ('2026-12-01') EXCLUSIVE,
+     PARTITION p202612 STARTING ('2026-12-01') ENDING ('2027-01-01') EXCLUSIVE,
+     PARTITION pmax    STARTING ('2027-01-01') ENDING (MAXVALUE));
+
+CREATE INDEX idx_task_arch_ticket ON batch_task_archive (ticket_no) PARTITIONED;
+CREATE INDEX idx_task_arch_type ON batch_task_archive (type, finish_at) PARTITIONED;
+
+CREATE TABLE batch_run_archive (
+    id         BIGINT        NOT NULL,
+    task_id    BIGINT        NOT NULL,
+    started_at TIMESTAMP     NOT NULL,
+    ended_at   TIMESTAMP     NOT NULL,
+    status     VARCHAR(16),
+    message    VARCHAR(2000),
+    PRIMARY KEY (id, ended_at)
+)
+PARTITION BY RANGE (ended_at)
+    (PARTITION pmin    STARTING (MINVALUE)     ENDING ('2026-09-01') EXCLUSIVE,
+     PARTITION p202609 STARTING ('2026-09-01') ENDING ('2026-10-01') EXCLUSIVE,
+     PARTITION p202610 STARTING ('2026-10-01') ENDING ('2026-11-01') EXCLUSIVE,
+     PARTITION p202611 STARTING ('2026-11-01') ENDING ('2026-12-01') EXCLUSIVE,
+     PARTITION p202612 STARTING ('2026-12-01') ENDING ('2027-01-01') EXCLUSIVE,
+     PARTITION pmax    STARTING ('2027-01-01') ENDING (MAXVALUE));
+
+CREATE INDEX idx_run_arch_task ON batch_run_archive (task_id) PARTITIONED;
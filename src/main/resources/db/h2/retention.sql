@@ -0,0 +1,26 @@
+-- 本地 h2 profile 用的归档表（不分区，仅用于验证 ARCHIVE 流程）
+
+CREATE TABLE IF NOT EXISTS batch_task_archive (
+    id           BIGINT        NOT NULL PRIMARY KEY,
+    ticket_no    VARCHAR(255),
+    type         VARCHAR(64)   NOT NULL,
+    payload      CLOB,
+    priority     INT,
+    status       VARCHAR(16)   NOT NULL,
+    attempts     INT,
+    max_attempts INT,
+    owner        VARCHAR(64),
+    created_at   TIMESTAMP(3)  NOT NULL,
+    updated_at   TIMESTAMP(3)  NOT NULL,
+    finish_at    TIMESTAMP(3)  NOT NULL,
+    message      VARCHAR(2000)
+);
+
+CREATE TABLE IF NOT EXISTS batch_run_archive (
+    id         BIGINT        NOT NULL PRIMARY KEY,
+    task_id    BIGINT        NOT NULL,
+    started_at TIMESTAMP     NOT NULL,
+    ended_at   TIMESTAMP     NOT NULL,
+    status     VARCHAR(16),
+    message    VARCHAR(2000)
+);
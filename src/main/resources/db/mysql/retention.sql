@@ -0,0 +1,57 @@
+-- 历史归档表（scheduler.retention.mode=ARCHIVE 时需要），按 finish_at / ended_at 月度 RANGE 分区。
+-- MySQL 分区表的主键/唯一键必须包含分区列，因此主键为 (id, finish_at)，ticket_no 只建普通索引。
+-- 首尾各有一个兜底分区：pmin 收建表前结束的任务（第一个月份分区因此只含当月，按月删除时不会连带删掉更早的历史），
+-- pmax 收超出已建月份的任务。下面的月份只是示例，建表前改成从当前月份开始。
+-- 过期归档直接 DROP PARTITION，不产生逐行删除：
+--   ALTER TABLE batch_task_archive DROP PARTITION p202609;
+-- 每月在 pmax 之前拆出下一个分区（pmax 通常是空的，拆分很快），batch_run_archive 同理：
+--   ALTER TABLE batch_task_archive REORGANIZE PARTITION pmax INTO (
+--     PARTITION p202701 VALUES LESS THAN ('2027-02-01'), PARTITION pmax VALUES LESS THAN (MAXVALUE));
+-- 热表 batch_task 不分区：ticket_no 唯一约束和 IDENTITY 主键都不包含时间列，
+-- 由 RetentionService 把终态行移走，热表只保留在途任务。
+
+CREATE TABLE IF NOT EXISTS batch_task_archive (
+    id           BIGINT        NOT NULL,
+    ticket_no    VARCHAR(255),
+    type         VARCHAR(64)   NOT NULL,
+    payload      LONGTEXT,
+    priority     INT,
+    status       VARCHAR(16)   NOT NULL,
+    attempts     INT,
+    max_attempts INT,
+    owner        VARCHAR(64),
+    created_at   DATETIME(3)   NOT NULL,
+    updated_at   DATETIME(3)   NOT NULL,
+    finish_at    DATETIME(3)   NOT NULL,
+    message      VARCHAR(2000),
+    PRIMARY KEY (id, finish_at),
+    KEY idx_task_arch_ticket (ticket_no),
+    KEY idx_task_arch_type (type, finish_at)
+) ENGINE = InnoDB
+PARTITION BY RANGE COLUMNS (finish_at) (
+    PARTITION pmin VALUES LESS THAN ('2026-09-01'),
+    PARTITION p202609 VALUES LESS THAN ('2026-10-01'),
+    PARTITION p202610 VALUES LESS THAN ('2026-11-01'),
+    PARTITION p202611 VALUES LESS THAN ('2026-12-01'),
+    PARTITION p202612 VALUES LESS THAN ('2027-01-01'),
+    PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
+
+CREATE TABLE IF NOT EXISTS batch_run_archive (
+    id         BIGINT        NOT NULL,
+    task_id    BIGINT        NOT NULL,
+    started_at DATETIME(6)   NOT NULL,
+    ended_at   DATETIME(6)   NOT NULL,
+    status     VARCHAR(16),
+    message    VARCHAR(2000),
+    PRIMARY KEY (id, ended_at),
+    KEY idx_run_arch_task (task_id)
+) ENGINE = InnoDB
+PARTITION BY RANGE COLUMNS (ended_at) (
+    PARTITION pmin VALUES LESS THAN ('2026-09-01'),
+    PARTITION p202609 VALUES LESS THAN ('2026-10-01'),
+    PARTITION p202610 VALUES LESS THAN ('2026-11-01'),
+    PARTITION p202611 VALUES LESS THAN ('2026-12-01'),
+    PARTITION p202612 VALUES LESS THAN ('2027-01-01'),
+    PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);